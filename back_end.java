@@ -1,12 +1,18 @@
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.text.DecimalFormat;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 
 public class ResultsManagementSystem {
     // ✅ MySQL configuration
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/resultsdb";
+    // rewriteBatchedStatements makes Connector/J send a batch as multi-row INSERTs instead of one statement per row
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/resultsdb?rewriteBatchedStatements=true";
     private static final String DB_USER = "root";      // change if you have another username
     private static final String DB_PASSWORD = "tedd";  // change to your actual password
     private static final String DB_DRIVER = "com.mysql.cj.jdbc.Driver";
@@ -18,7 +24,9 @@ public class ResultsManagementSystem {
                     "name VARCHAR(100), " +
                     "student_id VARCHAR(20) UNIQUE, " +
                     "current_semester INT DEFAULT 1, " +
-                    "program VARCHAR(50))";
+                    "program VARCHAR(50), " +
+                    "status VARCHAR(12) DEFAULT 'ACTIVE', " +
+                    "archived_at DATE)";
 
     private static final String CREATE_COURSES =
             "CREATE TABLE IF NOT EXISTS courses (" +
@@ -35,6 +43,7 @@ public class ResultsManagementSystem {
                     "id INT AUTO_INCREMENT PRIMARY KEY, " +
                     "subject_name VARCHAR(50), " +
                     "course_id INT, " +
+                    "UNIQUE KEY uq_subject_course (subject_name, course_id), " +
                     "FOREIGN KEY(course_id) REFERENCES courses(id))";
 
     private static final String CREATE_INSTRUCTORS =
@@ -96,16 +105,106 @@ public class ResultsManagementSystem {
                     "payment_date DATE, receipt_no VARCHAR(20), " +
                     "FOREIGN KEY(student_id) REFERENCES students(student_id))";
 
+    private static final String CREATE_AT_RISK_STUDENTS =
+            "CREATE TABLE IF NOT EXISTS at_risk_students (" +
+                    "run_date DATE, rank_no INT, student_id VARCHAR(20), score DOUBLE, reasons VARCHAR(255), " +
+                    "PRIMARY KEY(run_date, student_id), " +
+                    "FOREIGN KEY(student_id) REFERENCES students(student_id))";
+
+    // Finance rollups, maintained by recordPayment/setFeeStructure so dashboards never scan student_payments
+    private static final String CREATE_FINANCE_COLLECTIONS_DAILY =
+            "CREATE TABLE IF NOT EXISTS finance_collections_daily (" +
+                    "payment_date DATE, program VARCHAR(50), semester_number INT, " +
+                    "total_collected DOUBLE, payment_count INT, " +
+                    "PRIMARY KEY(payment_date, program, semester_number))";
+
+    // Expected fees = fee_amount x enrolled_students (students of the program at or past the semester)
+    private static final String CREATE_FINANCE_EXPECTED_FEES =
+            "CREATE TABLE IF NOT EXISTS finance_expected_fees (" +
+                    "program VARCHAR(50), semester INT, fee_amount DOUBLE, enrolled_students INT, " +
+                    "PRIMARY KEY(program, semester))";
+
+    // Cold storage for graduated/inactive students; same columns as the hot tables, ids preserved
+    private static final String CREATE_RESULTS_ARCHIVE =
+            "CREATE TABLE IF NOT EXISTS results_archive (" +
+                    "id INT PRIMARY KEY, " +
+                    "student_id VARCHAR(20), semester_id INT, subject_id INT, " +
+                    "marks DOUBLE, grade VARCHAR(5), " +
+                    "FOREIGN KEY(student_id) REFERENCES students(student_id))";
+
+    private static final String CREATE_SUP_EXAMS_ARCHIVE =
+            "CREATE TABLE IF NOT EXISTS sup_exams_archive (" +
+                    "id INT PRIMARY KEY, " +
+                    "student_id VARCHAR(20), semester_id INT, subject_id INT, " +
+                    "status VARCHAR(10), marks DOUBLE, " +
+                    "FOREIGN KEY(student_id) REFERENCES students(student_id))";
+
+    private static final String CREATE_STUDENT_PAYMENTS_ARCHIVE =
+            "CREATE TABLE IF NOT EXISTS student_payments_archive (" +
+                    "id INT PRIMARY KEY, " +
+                    "student_id VARCHAR(20), semester_number INT, amount_paid DOUBLE, " +
+                    "payment_date DATE, receipt_no VARCHAR(20), " +
+                    "FOREIGN KEY(student_id) REFERENCES students(student_id))";
+
+    // One row per archival run; last_student_id is the resume checkpoint
+    private static final String CREATE_ARCHIVE_RUNS =
+            "CREATE TABLE IF NOT EXISTS archive_runs (" +
+                    "run_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "started_at DATETIME, finished_at DATETIME, status VARCHAR(10), " +
+                    "last_student_id VARCHAR(20), students_archived INT, rows_moved INT)";
+
+    // Grade moderation: one log row per applied transform, with every result's before/after values for undo
+    private static final String CREATE_MODERATION_LOG =
+            "CREATE TABLE IF NOT EXISTS moderation_log (" +
+                    "moderation_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "subject_id INT, semester_id INT, transform VARCHAR(255), " +
+                    "applied_at DATETIME, status VARCHAR(10), rows_changed INT, undone_at DATETIME, " +
+                    "FOREIGN KEY(subject_id) REFERENCES subjects(id), " +
+                    "FOREIGN KEY(semester_id) REFERENCES semesters(id))";
+
+    private static final String CREATE_MODERATION_CHANGES =
+            "CREATE TABLE IF NOT EXISTS moderation_changes (" +
+                    "moderation_id INT, result_id INT, student_id VARCHAR(20), " +
+                    "old_marks DOUBLE, old_grade VARCHAR(5), new_marks DOUBLE, new_grade VARCHAR(5), " +
+                    "PRIMARY KEY(moderation_id, result_id), " +
+                    "FOREIGN KEY(moderation_id) REFERENCES moderation_log(moderation_id))";
+
+    // Hot table -> columns copied to its archive; <table>_all views union the two
+    private static final String[][] ARCHIVED_TABLES = {
+            {"results", "id, student_id, semester_id, subject_id, marks, grade"},
+            {"sup_exams", "id, student_id, semester_id, subject_id, status, marks"},
+            {"student_payments", "id, student_id, semester_number, amount_paid, payment_date, receipt_no"}
+    };
+
+    // Striped locks serialize concurrent upserts of the same natural key in-process
+    private static final int UPSERT_LOCK_STRIPES = 64;
+
     private Connection conn;
+    private final Object[] upsertLocks = new Object[UPSERT_LOCK_STRIPES];
+    // GPA distribution per "program|semester", used for percentile placement
+    private final Map<String, GpaSketch> cohortSketches = new ConcurrentHashMap<>();
 
     public ResultsManagementSystem() {
+        this(StorageBackend.MYSQL);
+    }
+
+    public ResultsManagementSystem(StorageBackend backend) {
+        this.backend = backend;
+        for (int i = 0; i < UPSERT_LOCK_STRIPES; i++) {
+            upsertLocks[i] = new Object();
+        }
+        initRepositories();
         initDatabase();
+        initFinanceRollups();
+        loadArchivedStudents();
+        scheduler = new WorkloadScheduler();
+        refreshDerivedViews();
     }
 
     private void initDatabase() {
         try {
-            Class.forName(DB_DRIVER);
-            conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            Class.forName(backend.driver);
+            conn = openConnection();
             Statement stmt = conn.createStatement();
             stmt.execute(CREATE_STUDENTS);
             stmt.execute(CREATE_COURSES);
@@ -119,8 +218,24 @@ public class ResultsManagementSystem {
             stmt.execute(CREATE_SUP_EXAMS);
             stmt.execute(CREATE_FEE_STRUCTURE);
             stmt.execute(CREATE_STUDENT_PAYMENTS);
+            stmt.execute(CREATE_AT_RISK_STUDENTS);
+            stmt.execute(CREATE_FINANCE_COLLECTIONS_DAILY);
+            stmt.execute(CREATE_FINANCE_EXPECTED_FEES);
+            stmt.execute(CREATE_RESULTS_ARCHIVE);
+            stmt.execute(CREATE_SUP_EXAMS_ARCHIVE);
+            stmt.execute(CREATE_STUDENT_PAYMENTS_ARCHIVE);
+            stmt.execute(CREATE_ARCHIVE_RUNS);
+            stmt.execute(CREATE_MODERATION_LOG);
+            stmt.execute(CREATE_MODERATION_CHANGES);
             stmt.close();
-            System.out.println(" Database initialized successfully with MySQL!\n just to notify me ");
+            ensureColumn("students", "status", "VARCHAR(12) DEFAULT 'ACTIVE'");
+            ensureColumn("students", "archived_at", "DATE");
+            createArchiveViews();
+            // Tables created before the unique key existed need it added explicitly; embedded schemas always have it
+            if (backend == StorageBackend.MYSQL) {
+                ensureUniqueKey("subjects", "uq_subject_course", "subject_name, course_id");
+            }
+            System.out.println(" Database initialized successfully with " + backend.label + "!\n just to notify me ");
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -128,677 +243,3768 @@ public class ResultsManagementSystem {
 
 
 
-private int insertOrGetStudent(String name, String studentId, String program) {
-    try {
-        PreparedStatement select = conn.prepareStatement("SELECT id, program FROM students WHERE student_id = ?");
-        select.setString(1, studentId);
-        ResultSet rs = select.executeQuery();
-        if (rs.next()) {
-            String existingProgram = rs.getString("program");
-            if (existingProgram == null || existingProgram.isEmpty()) {
-                PreparedStatement updateProg = conn.prepareStatement("UPDATE students SET program = ? WHERE student_id = ?");
-                updateProg.setString(1, program);
-                updateProg.setString(2, studentId);
-                updateProg.executeUpdate();
-            }
-            return rs.getInt("id");
-        }
-        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO students (name, student_id, program, current_semester) VALUES (?, ?, ?, 1)");
-        pstmt.setString(1, name);
-        pstmt.setString(2, studentId);
-        pstmt.setString(3, program);
-        pstmt.executeUpdate();
-        select.setString(1, studentId);
-        rs = select.executeQuery();
-        rs.next();
-        return rs.getInt("id");
-    } catch (SQLException e) {
-        e.printStackTrace();
+// Workload isolation: each class gets its own bounded executor, dedicated connections and query timeout
+public enum WorkloadClass {
+    INTERACTIVE_WRITE(4, 32, 10),
+    INTERACTIVE_READ(4, 64, 15),
+    REPORT(1, 4, 300);
+
+    final int connections;
+    final int queueCapacity;
+    final int queryTimeoutSeconds;
+
+    WorkloadClass(int connections, int queueCapacity, int queryTimeoutSeconds) {
+        this.connections = connections;
+        this.queueCapacity = queueCapacity;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
     }
-    return -1;
 }
 
-private int insertOrGetCourse(String courseName) {
-    try {
-        PreparedStatement select = conn.prepareStatement("SELECT id FROM courses WHERE course_name = ?");
-        select.setString(1, courseName);
-        ResultSet rs = select.executeQuery();
-        if (rs.next()) {
-            return rs.getInt("id");
+private final class WorkloadScheduler {
+    private final Map<WorkloadClass, ThreadPoolExecutor> executors = new EnumMap<>(WorkloadClass.class);
+    private final Map<WorkloadClass, BlockingQueue<Connection>> connections = new EnumMap<>(WorkloadClass.class);
+
+    WorkloadScheduler() {
+        for (WorkloadClass cls : WorkloadClass.values()) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(cls.connections, cls.connections,
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(cls.queueCapacity), r -> {
+                        Thread t = new Thread(r, "rms-" + cls.name().toLowerCase());
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            executors.put(cls, executor);
+            connections.put(cls, new ArrayBlockingQueue<>(cls.connections));
         }
-        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO courses (course_name) VALUES (?)");
-        pstmt.setString(1, courseName);
-        pstmt.executeUpdate();
-        select.setString(1, courseName);
-        rs = select.executeQuery();
-        rs.next();
-        return rs.getInt("id");
-    } catch (SQLException e) {
-        e.printStackTrace();
     }
-    return -1;
+
+    <T> Future<T> submit(WorkloadClass cls, Callable<T> task) {
+        return executors.get(cls).submit(() -> {
+            Connection c = borrowConnection(cls);
+            boundConnection.set(c);
+            queryTimeoutSeconds.set(cls.queryTimeoutSeconds);
+            try {
+                return task.call();
+            } finally {
+                boundConnection.remove();
+                queryTimeoutSeconds.remove();
+                connections.get(cls).offer(c);
+            }
+        });
+    }
+
+    int queued(WorkloadClass cls) {
+        return executors.get(cls).getQueue().size();
+    }
+
+    boolean saturated(WorkloadClass cls) {
+        return executors.get(cls).getActiveCount() >= cls.connections;
+    }
+
+    // Connections are opened lazily up to the class quota and reused after that
+    private Connection borrowConnection(WorkloadClass cls) throws SQLException {
+        Connection c = connections.get(cls).poll();
+        if (c != null && !c.isClosed()) return c;
+        return openConnection();
+    }
 }
 
-private int insertOrGetSemester(int num) {
+private final ThreadLocal<Connection> boundConnection = new ThreadLocal<>();
+private final ThreadLocal<Integer> queryTimeoutSeconds = new ThreadLocal<>();
+private WorkloadScheduler scheduler;
+
+private Connection openConnection() throws SQLException {
+    return DriverManager.getConnection(backend.jdbcUrl(), backend.user, backend.password);
+}
+
+// Connection of the current workload, or the shared console connection outside the scheduler
+private Connection db() {
+    Connection c = boundConnection.get();
+    return c != null ? c : conn;
+}
+
+private <S extends Statement> S withTimeout(S stmt) throws SQLException {
+    Integer timeout = queryTimeoutSeconds.get();
+    if (timeout != null) stmt.setQueryTimeout(timeout);
+    return stmt;
+}
+
+private PreparedStatement prepare(String sql) throws SQLException {
+    return withTimeout(db().prepareStatement(sql));
+}
+
+private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+    return withTimeout(db().prepareStatement(sql, autoGeneratedKeys));
+}
+
+private PreparedStatement prepare(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return withTimeout(db().prepareStatement(sql, resultSetType, resultSetConcurrency));
+}
+
+private Statement createStatement() throws SQLException {
+    return withTimeout(db().createStatement());
+}
+
+// Runs the task on its workload class and waits for it; returns null when rejected or failed
+public <T> T runWorkload(WorkloadClass cls, Callable<T> task) {
+    if (scheduler.saturated(cls) && scheduler.queued(cls) > 0) {
+        System.out.println("System busy: " + scheduler.queued(cls) + " " + cls + " operation(s) queued ahead of you...");
+    }
+    Future<T> future;
     try {
-        PreparedStatement select = conn.prepareStatement("SELECT id FROM semesters WHERE semester_number = ?");
-        select.setInt(1, num);
-        ResultSet rs = select.executeQuery();
-        if (rs.next()) {
-            return rs.getInt("id");
+        future = scheduler.submit(cls, task);
+    } catch (RejectedExecutionException e) {
+        System.out.println("System overloaded: too many " + cls + " operations in progress. Please retry shortly.");
+        return null;
+    }
+    try {
+        return future.get();
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+        Throwable cause = e.getCause() instanceof WorkloadSqlException ? e.getCause().getCause() : e.getCause();
+        if (cause instanceof SQLTimeoutException) {
+            System.out.println("Operation cancelled: exceeded the " + cls.queryTimeoutSeconds + "s limit for " + cls + ".");
+        } else {
+            cause.printStackTrace();
         }
-        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO semesters (semester_number) VALUES (?)");
-        pstmt.setInt(1, num);
-        pstmt.executeUpdate();
-        select.setInt(1, num);
-        rs = select.executeQuery();
-        rs.next();
-        return rs.getInt("id");
-    } catch (SQLException e) {
-        e.printStackTrace();
     }
-    return -1;
+    return null;
 }
 
-private int insertOrGetSubject(String subjectName, int courseId) {
-    try {
-        PreparedStatement select = conn.prepareStatement("SELECT id FROM subjects WHERE subject_name = ? AND course_id = ?");
-        select.setString(1, subjectName);
-        select.setInt(2, courseId);
-        ResultSet rs = select.executeQuery();
-        if (rs.next()) {
-            return rs.getInt("id");
-        }
-        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO subjects (subject_name, course_id) VALUES (?, ?)");
-        pstmt.setString(1, subjectName);
-        pstmt.setInt(2, courseId);
-        pstmt.executeUpdate();
-        select.setString(1, subjectName);
-        select.setInt(2, courseId);
-        rs = select.executeQuery();
-        rs.next();
-        return rs.getInt("id");
-    } catch (SQLException e) {
-        e.printStackTrace();
+// Carries a SQLException out of a service method running under runWorkload
+private static class WorkloadSqlException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    WorkloadSqlException(SQLException cause) {
+        super(cause);
     }
-    return -1;
 }
 
-private int insertOrGetInstructor(String name, String instructorId) {
-    try {
-        PreparedStatement select = conn.prepareStatement("SELECT id FROM instructors WHERE instructor_id = ?");
-        select.setString(1, instructorId);
-        ResultSet rs = select.executeQuery();
-        if (rs.next()) {
-            return rs.getInt("id");
-        }
-        PreparedStatement pstmt = conn.prepareStatement("INSERT INTO instructors (name, instructor_id) VALUES (?, ?)");
-        pstmt.setString(1, name);
-        pstmt.setString(2, instructorId);
-        pstmt.executeUpdate();
-        select.setString(1, instructorId);
-        rs = select.executeQuery();
+// Service methods report SQL failures here: under runWorkload they propagate so timeouts and errors reach
+// the caller; on the console connection they are printed as before
+private void sqlFailed(SQLException e) {
+    if (boundConnection.get() != null) throw new WorkloadSqlException(e);
+    e.printStackTrace();
+}
+
+public void runWorkload(WorkloadClass cls, Runnable task) {
+    runWorkload(cls, () -> {
+        task.run();
+        return null;
+    });
+}
+
+private void ensureUniqueKey(String table, String keyName, String columns) {
+    try (PreparedStatement check = prepare(
+            "SELECT COUNT(*) FROM information_schema.statistics " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?")) {
+        check.setString(1, table);
+        check.setString(2, keyName);
+        ResultSet rs = check.executeQuery();
         rs.next();
-        return rs.getInt("id");
+        if (rs.getInt(1) > 0) return;
+        try (Statement alter = createStatement()) {
+            alter.execute("ALTER TABLE " + table + " ADD UNIQUE KEY " + keyName + " (" + columns + ")");
+        }
     } catch (SQLException e) {
-        e.printStackTrace();
+        System.out.println("Warning: could not add unique key " + keyName + " on " + table +
+                " (remove duplicate rows first): " + e.getMessage());
     }
-    return -1;
 }
 
-// Assign instructor to subject
-public void assignInstructorToSubject(int subjectId, int instructorId) {
+// Adds a column missing from tables created by an older version of the schema
+private void ensureColumn(String table, String column, String definition) {
     try {
-        PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO subject_instructors (subject_id, instructor_id) VALUES (?, ?) " +
-                        "ON DUPLICATE KEY UPDATE instructor_id = instructor_id");
-        pstmt.setInt(1, subjectId);
-        pstmt.setInt(2, instructorId);
-        pstmt.executeUpdate();
-        System.out.println("Instructor assigned to subject successfully!");
+        ResultSet rs = db().getMetaData().getColumns(db().getCatalog(), null, table, column);
+        if (rs.next()) return;
+        try (Statement alter = createStatement()) {
+            alter.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
     } catch (SQLException e) {
-        e.printStackTrace();
+        System.out.println("Warning: could not add column " + column + " to " + table + ": " + e.getMessage());
     }
 }
 
-// Create class schedule with conflict detection
-public void createClassSchedule(String day, String timeSlot, int subjectId, int instructorId, String room, int semesterNum) {
-    // Check room conflict
-    try {
-        PreparedStatement roomCheck = conn.prepareStatement(
-                "SELECT COUNT(*) FROM classes WHERE room = ? AND day = ? AND time_slot = ?");
-        roomCheck.setString(1, room);
-        roomCheck.setString(2, day);
-        roomCheck.setString(3, timeSlot);
-        ResultSet roomRs = roomCheck.executeQuery();
-        roomRs.next();
-        if (roomRs.getInt(1) > 0) {
-            System.out.println("Conflict: Room " + room + " already booked on " + day + " at " + timeSlot);
-            return;
-        }
+// Storage backends: the MySQL server, or an embedded in-process H2 database running in MySQL mode.
+// Select with --backend=embedded, -Drms.backend=embedded or RMS_BACKEND=embedded; -Drms.db.url overrides the URL.
+public enum StorageBackend {
+    MYSQL("MySQL", DB_DRIVER, DB_URL, DB_USER, DB_PASSWORD, Integer.MIN_VALUE),
+    EMBEDDED("embedded H2", "org.h2.Driver", "jdbc:h2:./resultsdb;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY", "sa", "", 1000);
 
-        // Check instructor conflict
-        PreparedStatement instCheck = conn.prepareStatement(
-                "SELECT COUNT(*) FROM classes WHERE instructor_id = ? AND day = ? AND time_slot = ?");
-        instCheck.setInt(1, instructorId);
-        instCheck.setString(2, day);
-        instCheck.setString(3, timeSlot);
-        ResultSet instRs = instCheck.executeQuery();
-        instRs.next();
-        if (instRs.getInt(1) > 0) {
-            System.out.println("Conflict: Instructor already scheduled on " + day + " at " + timeSlot);
-            return;
-        }
+    final String label;
+    final String driver;
+    final String url;
+    final String user;
+    final String password;
+    final int streamingFetchSize; // MySQL only streams with Integer.MIN_VALUE; H2 needs a positive size
 
-        // Check if instructor is assigned to subject
-        PreparedStatement assignCheck = conn.prepareStatement(
-                "SELECT COUNT(*) FROM subject_instructors WHERE subject_id = ? AND instructor_id = ?");
-        assignCheck.setInt(1, subjectId);
-        assignCheck.setInt(2, instructorId);
-        ResultSet assignRs = assignCheck.executeQuery();
-        assignRs.next();
-        if (assignRs.getInt(1) == 0) {
-            System.out.println("Error: Instructor not assigned to this subject.");
-            return;
-        }
+    StorageBackend(String label, String driver, String url, String user, String password, int streamingFetchSize) {
+        this.label = label;
+        this.driver = driver;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.streamingFetchSize = streamingFetchSize;
+    }
 
-        // Create class
-        PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO classes (day, time_slot, subject_id, instructor_id, room, semester_number) VALUES (?, ?, ?, ?, ?, ?)",
-                Statement.RETURN_GENERATED_KEYS);
-        pstmt.setString(1, day);
-        pstmt.setString(2, timeSlot);
-        pstmt.setInt(3, subjectId);
-        pstmt.setInt(4, instructorId);
-        pstmt.setString(5, room);
-        pstmt.setInt(6, semesterNum);
-        pstmt.executeUpdate();
-        ResultSet rs = pstmt.getGeneratedKeys();
-        if (rs.next()) {
-            int classId = rs.getInt(1);
-            System.out.println("Class scheduled successfully! Class ID: " + classId);
+    String jdbcUrl() {
+        return System.getProperty("rms.db.url", url);
+    }
+
+    static StorageBackend fromArgs(String[] args) {
+        String choice = System.getProperty("rms.backend", System.getenv("RMS_BACKEND"));
+        for (String arg : args) {
+            if (arg.startsWith("--backend=")) choice = arg.substring("--backend=".length());
         }
-    } catch (SQLException e) {
-        e.printStackTrace();
+        return "embedded".equalsIgnoreCase(choice) ? EMBEDDED : MYSQL;
     }
 }
 
-// Allocate student to class
-public void allocateStudentToClass(String studentId, int classId) {
-    try {
-        PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO student_classes (student_id, class_id) VALUES (?, ?)");
-        pstmt.setString(1, studentId);
-        pstmt.setInt(2, classId);
-        int rows = pstmt.executeUpdate();
-        if (rows > 0) {
-            System.out.println("Student allocated to class successfully!");
-        } else {
-            System.out.println("Allocation failed.");
-        }
-    } catch (SQLException e) {
-        e.printStackTrace();
+public static class StudentRecord {
+    public final String studentId;
+    public final String name;
+    public final String program;
+    public final int currentSemester;
+
+    StudentRecord(String studentId, String name, String program, int currentSemester) {
+        this.studentId = studentId;
+        this.name = name;
+        this.program = program;
+        this.currentSemester = currentSemester;
     }
 }
 
-// Enter regular exam results
-public void enterResults() {
-    Scanner scanner = new Scanner(System.in);
-    System.out.print("Enter student name: ");
-    String name = scanner.nextLine();
-    System.out.print("Enter student ID: ");
-    String studentId = scanner.nextLine();
-    System.out.print("Enter program (if new student): ");
-    String program = scanner.nextLine();
-    insertOrGetStudent(name, studentId, program);
+public static class StudentUpsert {
+    public final int id;
+    public final boolean inserted; // false when the student already existed
+    public final boolean programAssigned; // the row now carries the given program and did not before
+    public final int currentSemester;
 
-    System.out.print("Enter semester number: ");
-    int semNum = scanner.nextInt();
-    scanner.nextLine();
-    int semId = insertOrGetSemester(semNum);
+    StudentUpsert(int id, boolean inserted, boolean programAssigned, int currentSemester) {
+        this.id = id;
+        this.inserted = inserted;
+        this.programAssigned = programAssigned;
+        this.currentSemester = currentSemester;
+    }
+}
 
-    System.out.print("Enter course name: ");
-    String courseName = scanner.nextLine();
-    int courseId = insertOrGetCourse(courseName);
+public interface StudentRepository {
+    StudentUpsert upsert(String name, String studentId, String program) throws SQLException;
+    StudentRecord find(String studentId) throws SQLException; // null when the student does not exist
+    void setCurrentSemester(String studentId, int semester) throws SQLException;
+    int setStatus(String studentId, String status) throws SQLException;
+    int graduateCohort(String program, int finalSemester) throws SQLException; // ACTIVE students at or past the final semester
+}
 
-    System.out.print("Enter subject name: ");
-    String subjectName = scanner.nextLine();
-    int subjectId = insertOrGetSubject(subjectName, courseId);
+public interface CatalogRepository {
+    int upsertCourse(String courseName) throws SQLException;
+    int upsertSemester(int semesterNumber) throws SQLException;
+    int upsertSubject(String subjectName, int courseId) throws SQLException;
+    int upsertInstructor(String name, String instructorId) throws SQLException;
+    int findInstructor(String instructorId) throws SQLException; // -1 when not found
+    int findCourse(String courseName) throws SQLException; // -1 when not found
+    int findSemester(int semesterNumber) throws SQLException; // -1 when not found
+    int findSubject(String subjectName, int courseId) throws SQLException; // -1 when not found
+}
 
-    System.out.print("Enter marks (out of 100): ");
-    double marks = scanner.nextDouble();
-    String grade = computeGrade(marks);
+public interface ResultRepository {
+    void insertResult(String studentId, int semId, int subjectId, double marks, String grade) throws SQLException;
+    int updateResult(String studentId, int semId, int subjectId, double marks, String grade) throws SQLException;
+    void insertSupExam(String studentId, int semId, int subjectId, String status, double marks) throws SQLException;
+    List<Double> findMarks(String studentId, int semesterNum) throws SQLException; // semesterNum -1 for all
+}
 
-    try (PreparedStatement pstmt = conn.prepareStatement(
-            "INSERT INTO results (student_id, semester_id, subject_id, marks, grade) VALUES (?, ?, ?, ?, ?)")) {
-        pstmt.setString(1, studentId);
-        pstmt.setInt(2, semId);
-        pstmt.setInt(3, subjectId);
-        pstmt.setDouble(4, marks);
-        pstmt.setString(5, grade);
-        pstmt.executeUpdate();
-        System.out.println("Regular result entered successfully!");
-    } catch (SQLException e) {
-        e.printStackTrace();
+public static class CollectionRollup {
+    public final LocalDate date;
+    public final String program;
+    public final int semester;
+    public final double total;
+    public final int payments;
+
+    CollectionRollup(LocalDate date, String program, int semester, double total, int payments) {
+        this.date = date;
+        this.program = program;
+        this.semester = semester;
+        this.total = total;
+        this.payments = payments;
     }
 }
 
-// Enter/update supplementary exam
-public void enterSUP() {
-    Scanner scanner = new Scanner(System.in);
-    System.out.print("Enter student ID: ");
-    String studentId = scanner.nextLine();
-    System.out.print("Enter semester number: ");
-    int semNum = scanner.nextInt();
-    scanner.nextLine();
-    int semId = insertOrGetSemester(semNum);
-    System.out.print("Enter subject name: ");
-    String subName = scanner.nextLine();
-    System.out.print("Enter course name: ");
-    String courseName = scanner.nextLine();
-    int courseId = insertOrGetCourse(courseName);
-    int subId = insertOrGetSubject(subName, courseId);
-    System.out.print("Enter SUP marks (out of 100): ");
-    double marks = scanner.nextDouble();
-    String grade = computeGrade(marks);
-    String status = !"F".equals(grade) ? "Cleared" : "Pending";
+public static class ExpectedFee {
+    public final String program;
+    public final int semester;
+    public final double feeAmount;
+    public final int enrolledStudents;
+
+    ExpectedFee(String program, int semester, double feeAmount, int enrolledStudents) {
+        this.program = program;
+        this.semester = semester;
+        this.feeAmount = feeAmount;
+        this.enrolledStudents = enrolledStudents;
+    }
 
-    try (PreparedStatement supPstmt = conn.prepareStatement(
-            "INSERT INTO sup_exams (student_id, semester_id, subject_id, status, marks) VALUES (?, ?, ?, ?, ?)")) {
-        supPstmt.setString(1, studentId);
-        supPstmt.setInt(2, semId);
-        supPstmt.setInt(3, subId);
-        supPstmt.setString(4, status);
-        supPstmt.setDouble(5, marks);
-        supPstmt.executeUpdate();
+    public double expectedTotal() {
+        return feeAmount * enrolledStudents;
+    }
+}
 
+public interface FeeRepository {
+    void upsertFeeStructure(String program, double amount, int semester, java.sql.Date dueDate) throws SQLException;
+    Double findFeeAmount(String program, int semester) throws SQLException; // null when no structure is set
+    void refreshExpectedFees(String program, int semester) throws SQLException;
+    void adjustEnrollment(String program, int semester, int delta) throws SQLException;
+    List<ExpectedFee> expectedFees() throws SQLException;
+    void rebuildExpectedFees() throws SQLException;
+}
 
-        // Update or insert in results
-        PreparedStatement update = conn.prepareStatement(
-                "UPDATE results SET marks = ?, grade = ? WHERE student_id = ? AND semester_id = ? AND subject_id = ?");
-        update.setDouble(1, marks);
-        update.setString(2, grade);
-        update.setString(3, studentId);
-        update.setInt(4, semId);
-        update.setInt(5, subId);
-        int rows = update.executeUpdate();
+public interface PaymentRepository {
+    void insertPayment(String studentId, int semester, double amount, java.sql.Date payDate, String receiptNo) throws SQLException;
+    double totalPaid(String studentId, int semester) throws SQLException;
+    double totalCollections() throws SQLException;
+    List<CollectionRollup> collections(java.sql.Date from, java.sql.Date to) throws SQLException; // null bounds are open
+    void rebuildCollectionRollups() throws SQLException;
+}
 
-        if (rows == 0) {
-            // Insert new
-            PreparedStatement ins = conn.prepareStatement(
-                    "INSERT INTO results (student_id, semester_id, subject_id, marks, grade) VALUES (?, ?, ?, ?, ?)");
-            ins.setString(1, studentId);
-            ins.setInt(2, semId);
-            ins.setInt(3, subId);
-            ins.setDouble(4, marks);
-            ins.setString(5, grade);
-            ins.executeUpdate();
-            System.out.println("SUP result inserted as new. Status: " + status);
-        } else {
-            System.out.println("SUP result updated successfully! Status: " + status);
-        }
-    } catch (SQLException e) {
-        e.printStackTrace();
+public interface SchedulingRepository {
+    void assignInstructor(int subjectId, int instructorId) throws SQLException;
+    boolean isRoomBooked(String room, String day, String timeSlot) throws SQLException;
+    boolean isInstructorBooked(int instructorId, String day, String timeSlot) throws SQLException;
+    boolean isInstructorAssigned(int subjectId, int instructorId) throws SQLException;
+    int insertClass(String day, String timeSlot, int subjectId, int instructorId, String room, int semesterNum) throws SQLException;
+    int allocateStudent(String studentId, int classId) throws SQLException;
+}
+
+private StorageBackend backend;
+private StudentRepository students;
+private CatalogRepository catalog;
+private ResultRepository results;
+private FeeRepository fees;
+private PaymentRepository payments;
+private SchedulingRepository scheduling;
+
+private void initRepositories() {
+    // H2 runs in MySQL mode and accepts ON DUPLICATE KEY UPDATE, so one dialect serves both backends. Only the
+    // id-returning catalog upserts differ: H2 returns no key for a row matched by LAST_INSERT_ID(id), so the
+    // embedded catalog selects first.
+    catalog = backend == StorageBackend.EMBEDDED ? new EmbeddedCatalogRepository() : new MySqlCatalogRepository();
+    students = new JdbcStudentRepository();
+    results = new JdbcResultRepository();
+    fees = new JdbcFeeRepository();
+    payments = new JdbcPaymentRepository();
+    scheduling = new JdbcSchedulingRepository();
+}
+
+private static void bind(PreparedStatement pstmt, Object... params) throws SQLException {
+    for (int i = 0; i < params.length; i++) {
+        pstmt.setObject(i + 1, params[i]);
     }
 }
 
-// Register for new semester (auto-increment, add fee if structure exists)
-public void registerNewSemester(String studentId) {
+private interface SqlWork {
+    void run() throws SQLException;
+}
+
+// Runs the work atomically, joining the caller's transaction if one is already open
+private void inTransaction(SqlWork work) throws SQLException {
+    Connection c = db();
+    if (!c.getAutoCommit()) {
+        work.run();
+        return;
+    }
+    c.setAutoCommit(false);
     try {
-        PreparedStatement pstmt = conn.prepareStatement("SELECT current_semester, program FROM students WHERE student_id = ?");
-        pstmt.setString(1, studentId);
+        work.run();
+        c.commit();
+    } catch (SQLException | RuntimeException e) {
+        c.rollback();
+        throw e;
+    } finally {
+        c.setAutoCommit(true);
+    }
+}
+
+private int queryInt(String sql, Object... params) throws SQLException {
+    try (PreparedStatement pstmt = prepare(sql)) {
+        bind(pstmt, params);
         ResultSet rs = pstmt.executeQuery();
-        if (!rs.next()) {
-            System.out.println("Student not found.");
-            return;
+        return rs.next() ? rs.getInt(1) : -1;
+    }
+}
+
+private Object upsertLockFor(String table, String key) {
+    int h = (table + ':' + key).hashCode();
+    h ^= (h >>> 16);
+    return upsertLocks[h & (UPSERT_LOCK_STRIPES - 1)];
+}
+
+// Runs an INSERT ... ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id) and returns the row id in one round trip.
+// Connector/J reports found rows by default, so the generated key is returned for existing rows too.
+private int upsertAndGetId(String sql, String table, String key, Object... params) throws SQLException {
+    synchronized (upsertLockFor(table, key)) {
+        try (PreparedStatement pstmt = prepare(sql, Statement.RETURN_GENERATED_KEYS)) {
+            bind(pstmt, params);
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            return rs.next() ? rs.getInt(1) : -1;
         }
-        int current = rs.getInt("current_semester");
-        String program = rs.getString("program");
-        int newSem = current + 1;
-        // Update student
-        PreparedStatement update = conn.prepareStatement("UPDATE students SET current_semester = ? WHERE student_id = ?");
-        update.setInt(1, newSem);
-        update.setString(2, studentId);
-        update.executeUpdate();
-        // Insert semester
-        insertOrGetSemester(newSem);
-        // If fee structure exists, note outstanding (no auto-payment)
-        if (program != null && !program.isEmpty()) {
-            PreparedStatement feeCheck = conn.prepareStatement("SELECT fee_amount FROM fee_structure WHERE program = ? AND semester = ?");
-            feeCheck.setString(1, program);
-            feeCheck.setInt(2, newSem);
-            ResultSet feeRs = feeCheck.executeQuery();
-            if (feeRs.next()) {
-                System.out.println("Registered for semester " + newSem + ". Fee structure found: $" + feeRs.getDouble("fee_amount") + " due.");
-            } else {
-                System.out.println("Registered for semester " + newSem + ". No fee structure defined yet.");
+    }
+}
+
+private interface IdLookup {
+    int find() throws SQLException; // -1 when not found
+}
+
+// The embedded engine is only written by this process, so select-then-insert under the stripe lock is race-free
+private int selectOrInsertId(String table, String key, IdLookup lookup, String insertSql,
+                             Object... params) throws SQLException {
+    synchronized (upsertLockFor(table, key)) {
+        int id = lookup.find();
+        if (id != -1) return id;
+        try (PreparedStatement pstmt = prepare(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+            bind(pstmt, params);
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+}
+
+private class JdbcStudentRepository implements StudentRepository {
+    // A plain INSERT rather than ON DUPLICATE KEY UPDATE: with found rows reported, an unchanged existing row
+    // also counts as 1 affected row, so only the duplicate-key error tells an insert from a concurrent one
+    @Override
+    public StudentUpsert upsert(String name, String studentId, String program) throws SQLException {
+        boolean hasProgram = program != null && !program.isEmpty();
+        synchronized (upsertLockFor("students", studentId)) {
+            if (queryInt("SELECT id FROM students WHERE student_id = ?", studentId) == -1) {
+                try (PreparedStatement pstmt = prepare(
+                        "INSERT INTO students (name, student_id, program, current_semester) VALUES (?, ?, ?, 1)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    bind(pstmt, name, studentId, program);
+                    pstmt.executeUpdate();
+                    ResultSet rs = pstmt.getGeneratedKeys();
+                    rs.next();
+                    return new StudentUpsert(rs.getInt(1), true, hasProgram, 1);
+                } catch (SQLIntegrityConstraintViolationException e) {
+                    // Another process inserted the student after our read; the locking read below sees its row
+                }
             }
-        } else {
-            System.out.println("Registered for semester " + newSem + ". Program not set.");
+            // A locking read returns the latest committed row even inside a REPEATABLE READ snapshot, and holds
+            // it so the program fill below cannot race another writer
+            int id;
+            int currentSemester;
+            boolean assign;
+            try (PreparedStatement pstmt = prepare(
+                    "SELECT id, program, current_semester FROM students WHERE student_id = ? FOR UPDATE")) {
+                bind(pstmt, studentId);
+                ResultSet rs = pstmt.executeQuery();
+                if (!rs.next()) throw new SQLException("Student " + studentId + " disappeared during upsert");
+                id = rs.getInt("id");
+                currentSemester = rs.getInt("current_semester");
+                String existing = rs.getString("program");
+                assign = hasProgram && (existing == null || existing.isEmpty());
+            }
+            // Fills in the program only when the existing row has none
+            if (assign) {
+                try (PreparedStatement pstmt = prepare("UPDATE students SET program = ? WHERE student_id = ?")) {
+                    bind(pstmt, program, studentId);
+                    pstmt.executeUpdate();
+                }
+            }
+            return new StudentUpsert(id, false, assign, currentSemester);
+        }
+    }
+
+    @Override
+    public StudentRecord find(String studentId) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "SELECT name, program, current_semester FROM students WHERE student_id = ?")) {
+            pstmt.setString(1, studentId);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) return null;
+            return new StudentRecord(studentId, rs.getString("name"), rs.getString("program"), rs.getInt("current_semester"));
+        }
+    }
+
+    @Override
+    public void setCurrentSemester(String studentId, int semester) throws SQLException {
+        try (PreparedStatement pstmt = prepare("UPDATE students SET current_semester = ? WHERE student_id = ?")) {
+            pstmt.setInt(1, semester);
+            pstmt.setString(2, studentId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public int setStatus(String studentId, String status) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "UPDATE students SET status = ? WHERE student_id = ? AND archived_at IS NULL")) {
+            bind(pstmt, status, studentId);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public int graduateCohort(String program, int finalSemester) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "UPDATE students SET status = '" + STATUS_GRADUATED + "' " +
+                        "WHERE program = ? AND current_semester >= ? AND status = '" + STATUS_ACTIVE + "'")) {
+            bind(pstmt, program, finalSemester);
+            return pstmt.executeUpdate();
+        }
+    }
+}
+
+// Upserts look the row up first: a MySQL upsert burns an AUTO_INCREMENT value even when the row exists
+private class MySqlCatalogRepository implements CatalogRepository {
+    @Override
+    public int upsertCourse(String courseName) throws SQLException {
+        int id = findCourse(courseName);
+        if (id != -1) return id;
+        return upsertAndGetId(
+                "INSERT INTO courses (course_name) VALUES (?) ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)",
+                "courses", courseName, courseName);
+    }
+
+    @Override
+    public int upsertSemester(int semesterNumber) throws SQLException {
+        int id = findSemester(semesterNumber);
+        if (id != -1) return id;
+        return upsertAndGetId(
+                "INSERT INTO semesters (semester_number) VALUES (?) ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)",
+                "semesters", String.valueOf(semesterNumber), semesterNumber);
+    }
+
+    @Override
+    public int upsertSubject(String subjectName, int courseId) throws SQLException {
+        int id = findSubject(subjectName, courseId);
+        if (id != -1) return id;
+        return upsertAndGetId(
+                "INSERT INTO subjects (subject_name, course_id) VALUES (?, ?) ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)",
+                "subjects", subjectName + '/' + courseId, subjectName, courseId);
+    }
+
+    @Override
+    public int upsertInstructor(String name, String instructorId) throws SQLException {
+        int id = findInstructor(instructorId);
+        if (id != -1) return id;
+        return upsertAndGetId(
+                "INSERT INTO instructors (name, instructor_id) VALUES (?, ?) ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)",
+                "instructors", instructorId, name, instructorId);
+    }
+
+    @Override
+    public int findInstructor(String instructorId) throws SQLException {
+        return queryInt("SELECT id FROM instructors WHERE instructor_id = ?", instructorId);
+    }
+
+    @Override
+    public int findCourse(String courseName) throws SQLException {
+        return queryInt("SELECT id FROM courses WHERE course_name = ?", courseName);
+    }
+
+    @Override
+    public int findSemester(int semesterNumber) throws SQLException {
+        return queryInt("SELECT id FROM semesters WHERE semester_number = ?", semesterNumber);
+    }
+
+    @Override
+    public int findSubject(String subjectName, int courseId) throws SQLException {
+        return queryInt("SELECT id FROM subjects WHERE subject_name = ? AND course_id = ?", subjectName, courseId);
+    }
+}
+
+private class EmbeddedCatalogRepository extends MySqlCatalogRepository {
+    @Override
+    public int upsertCourse(String courseName) throws SQLException {
+        return selectOrInsertId("courses", courseName, () -> findCourse(courseName),
+                "INSERT INTO courses (course_name) VALUES (?)", courseName);
+    }
+
+    @Override
+    public int upsertSemester(int semesterNumber) throws SQLException {
+        return selectOrInsertId("semesters", String.valueOf(semesterNumber), () -> findSemester(semesterNumber),
+                "INSERT INTO semesters (semester_number) VALUES (?)", semesterNumber);
+    }
+
+    @Override
+    public int upsertSubject(String subjectName, int courseId) throws SQLException {
+        return selectOrInsertId("subjects", subjectName + '/' + courseId, () -> findSubject(subjectName, courseId),
+                "INSERT INTO subjects (subject_name, course_id) VALUES (?, ?)", subjectName, courseId);
+    }
+
+    @Override
+    public int upsertInstructor(String name, String instructorId) throws SQLException {
+        return selectOrInsertId("instructors", instructorId, () -> findInstructor(instructorId),
+                "INSERT INTO instructors (name, instructor_id) VALUES (?, ?)", name, instructorId);
+    }
+}
+
+private class JdbcResultRepository implements ResultRepository {
+    @Override
+    public void insertResult(String studentId, int semId, int subjectId, double marks, String grade) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "INSERT INTO results (student_id, semester_id, subject_id, marks, grade) VALUES (?, ?, ?, ?, ?)")) {
+            bind(pstmt, studentId, semId, subjectId, marks, grade);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public int updateResult(String studentId, int semId, int subjectId, double marks, String grade) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "UPDATE results SET marks = ?, grade = ? WHERE student_id = ? AND semester_id = ? AND subject_id = ?")) {
+            bind(pstmt, marks, grade, studentId, semId, subjectId);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void insertSupExam(String studentId, int semId, int subjectId, String status, double marks) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "INSERT INTO sup_exams (student_id, semester_id, subject_id, status, marks) VALUES (?, ?, ?, ?, ?)")) {
+            bind(pstmt, studentId, semId, subjectId, status, marks);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Double> findMarks(String studentId, int semesterNum) throws SQLException {
+        List<Double> marks = new ArrayList<>();
+        String table = tableFor("results", studentId);
+        try (PreparedStatement pstmt = semesterNum == -1
+                ? prepare("SELECT r.marks FROM " + table + " r WHERE r.student_id = ?")
+                : prepare("SELECT r.marks FROM " + table + " r JOIN semesters sem ON r.semester_id = sem.id " +
+                        "WHERE r.student_id = ? AND sem.semester_number = ?")) {
+            pstmt.setString(1, studentId);
+            if (semesterNum != -1) pstmt.setInt(2, semesterNum);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                marks.add(rs.getDouble("marks"));
+            }
+        }
+        return marks;
+    }
+}
+
+private class JdbcFeeRepository implements FeeRepository {
+    @Override
+    public void upsertFeeStructure(String program, double amount, int semester, java.sql.Date dueDate) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "INSERT INTO fee_structure (program, fee_amount, semester, due_date) VALUES (?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE fee_amount = ?, due_date = ?")) {
+            bind(pstmt, program, amount, semester, dueDate, amount, dueDate);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public Double findFeeAmount(String program, int semester) throws SQLException {
+        try (PreparedStatement pstmt = prepare("SELECT fee_amount FROM fee_structure WHERE program = ? AND semester = ?")) {
+            bind(pstmt, program, semester);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getDouble("fee_amount") : null;
+        }
+    }
+
+    @Override
+    public void refreshExpectedFees(String program, int semester) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "INSERT INTO finance_expected_fees (program, semester, fee_amount, enrolled_students) " +
+                        "VALUES (?, ?, (SELECT fee_amount FROM fee_structure WHERE program = ? AND semester = ?), " +
+                        "(SELECT COUNT(*) FROM students WHERE program = ? AND current_semester >= ?)) " +
+                        "ON DUPLICATE KEY UPDATE fee_amount = VALUES(fee_amount), enrolled_students = VALUES(enrolled_students)")) {
+            bind(pstmt, program, semester, program, semester, program, semester);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void adjustEnrollment(String program, int semester, int delta) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "UPDATE finance_expected_fees SET enrolled_students = enrolled_students + ? WHERE program = ? AND semester = ?")) {
+            bind(pstmt, delta, program, semester);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<ExpectedFee> expectedFees() throws SQLException {
+        List<ExpectedFee> expected = new ArrayList<>();
+        try (PreparedStatement pstmt = prepare(
+                "SELECT program, semester, fee_amount, enrolled_students FROM finance_expected_fees ORDER BY program, semester")) {
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                expected.add(new ExpectedFee(rs.getString("program"), rs.getInt("semester"),
+                        rs.getDouble("fee_amount"), rs.getInt("enrolled_students")));
+            }
+        }
+        return expected;
+    }
+
+    @Override
+    public void rebuildExpectedFees() throws SQLException {
+        inTransaction(() -> {
+            try (Statement stmt = createStatement()) {
+                stmt.executeUpdate("DELETE FROM finance_expected_fees");
+                stmt.executeUpdate(
+                        "INSERT INTO finance_expected_fees (program, semester, fee_amount, enrolled_students) " +
+                                "SELECT fs.program, fs.semester, fs.fee_amount, " +
+                                "(SELECT COUNT(*) FROM students s WHERE s.program = fs.program AND s.current_semester >= fs.semester) " +
+                                "FROM fee_structure fs");
+            }
+        });
+    }
+}
+
+private class JdbcPaymentRepository implements PaymentRepository {
+    @Override
+    public void insertPayment(String studentId, int semester, double amount, java.sql.Date payDate, String receiptNo) throws SQLException {
+        inTransaction(() -> {
+            try (PreparedStatement pstmt = prepare(
+                    "INSERT INTO student_payments (student_id, semester_number, amount_paid, payment_date, receipt_no) " +
+                            "VALUES (?, ?, ?, ?, ?)");
+                 PreparedStatement rollup = prepare(
+                         "INSERT INTO finance_collections_daily (payment_date, program, semester_number, total_collected, payment_count) " +
+                                 "VALUES (?, COALESCE((SELECT program FROM students WHERE student_id = ?), ''), ?, ?, 1) " +
+                                 "ON DUPLICATE KEY UPDATE total_collected = total_collected + VALUES(total_collected), " +
+                                 "payment_count = payment_count + 1")) {
+                bind(pstmt, studentId, semester, amount, payDate, receiptNo);
+                pstmt.executeUpdate();
+                bind(rollup, payDate, studentId, semester, amount);
+                rollup.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public double totalPaid(String studentId, int semester) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "SELECT SUM(amount_paid) FROM " + tableFor("student_payments", studentId) +
+                        " WHERE student_id = ? AND semester_number = ?")) {
+            bind(pstmt, studentId, semester);
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            return rs.getDouble(1);
+        }
+    }
+
+    @Override
+    public double totalCollections() throws SQLException {
+        try (PreparedStatement pstmt = prepare("SELECT SUM(total_collected) FROM finance_collections_daily")) {
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            return rs.getDouble(1);
+        }
+    }
+
+    @Override
+    public List<CollectionRollup> collections(java.sql.Date from, java.sql.Date to) throws SQLException {
+        List<CollectionRollup> rows = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        if (from != null) {
+            where.append(" WHERE payment_date >= ?");
+            params.add(from);
+        }
+        if (to != null) {
+            where.append(from != null ? " AND" : " WHERE").append(" payment_date <= ?");
+            params.add(to);
+        }
+        try (PreparedStatement pstmt = prepare(
+                "SELECT payment_date, program, semester_number, total_collected, payment_count " +
+                        "FROM finance_collections_daily" + where + " ORDER BY payment_date")) {
+            bind(pstmt, params.toArray());
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                rows.add(new CollectionRollup(rs.getDate("payment_date").toLocalDate(), rs.getString("program"),
+                        rs.getInt("semester_number"), rs.getDouble("total_collected"), rs.getInt("payment_count")));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void rebuildCollectionRollups() throws SQLException {
+        inTransaction(() -> {
+            try (Statement stmt = createStatement()) {
+                stmt.executeUpdate("DELETE FROM finance_collections_daily");
+                stmt.executeUpdate(
+                        "INSERT INTO finance_collections_daily (payment_date, program, semester_number, total_collected, payment_count) " +
+                                "SELECT p.payment_date, COALESCE(s.program, ''), p.semester_number, SUM(p.amount_paid), COUNT(*) " +
+                                "FROM student_payments_all p LEFT JOIN students s ON p.student_id = s.student_id " +
+                                "GROUP BY p.payment_date, COALESCE(s.program, ''), p.semester_number");
+            }
+        });
+    }
+}
+
+private class JdbcSchedulingRepository implements SchedulingRepository {
+    @Override
+    public void assignInstructor(int subjectId, int instructorId) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "INSERT INTO subject_instructors (subject_id, instructor_id) VALUES (?, ?) " +
+                        "ON DUPLICATE KEY UPDATE instructor_id = instructor_id")) {
+            bind(pstmt, subjectId, instructorId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public boolean isRoomBooked(String room, String day, String timeSlot) throws SQLException {
+        return queryInt("SELECT COUNT(*) FROM classes WHERE room = ? AND day = ? AND time_slot = ?", room, day, timeSlot) > 0;
+    }
+
+    @Override
+    public boolean isInstructorBooked(int instructorId, String day, String timeSlot) throws SQLException {
+        return queryInt("SELECT COUNT(*) FROM classes WHERE instructor_id = ? AND day = ? AND time_slot = ?",
+                instructorId, day, timeSlot) > 0;
+    }
+
+    @Override
+    public boolean isInstructorAssigned(int subjectId, int instructorId) throws SQLException {
+        return queryInt("SELECT COUNT(*) FROM subject_instructors WHERE subject_id = ? AND instructor_id = ?",
+                subjectId, instructorId) > 0;
+    }
+
+    @Override
+    public int insertClass(String day, String timeSlot, int subjectId, int instructorId, String room, int semesterNum) throws SQLException {
+        try (PreparedStatement pstmt = prepare(
+                "INSERT INTO classes (day, time_slot, subject_id, instructor_id, room, semester_number) VALUES (?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            bind(pstmt, day, timeSlot, subjectId, instructorId, room, semesterNum);
+            pstmt.executeUpdate();
+            ResultSet rs = pstmt.getGeneratedKeys();
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    @Override
+    public int allocateStudent(String studentId, int classId) throws SQLException {
+        try (PreparedStatement pstmt = prepare("INSERT INTO student_classes (student_id, class_id) VALUES (?, ?)")) {
+            bind(pstmt, studentId, classId);
+            return pstmt.executeUpdate();
+        }
+    }
+}
+
+private int insertOrGetStudent(String name, String studentId, String program) {
+    try {
+        int[] id = {-1};
+        // The enrollment count moves in the same transaction as the insert that created the student
+        inTransaction(() -> {
+            StudentUpsert row = students.upsert(name, studentId, program);
+            if (row.programAssigned) {
+                // The student now counts towards every semester of the program they have reached
+                for (int sem = 1; sem <= row.currentSemester; sem++) {
+                    fees.adjustEnrollment(program, sem, 1);
+                }
+            }
+            id[0] = row.id;
+        });
+        studentIndex.add(studentId, name, program);
+        return id[0];
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+private int insertOrGetCourse(String courseName) {
+    try {
+        return catalog.upsertCourse(courseName);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+private int insertOrGetSemester(int num) {
+    try {
+        return catalog.upsertSemester(num);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+private int insertOrGetSubject(String subjectName, int courseId) {
+    try {
+        return catalog.upsertSubject(subjectName, courseId);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+// Read-only lookups for read paths; -1 when the semester or subject does not exist
+private int findSemesterId(int num) {
+    try {
+        return catalog.findSemester(num);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+private int findSubjectId(String subjectName, String courseName) {
+    try {
+        int courseId = catalog.findCourse(courseName);
+        return courseId == -1 ? -1 : catalog.findSubject(subjectName, courseId);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+private int insertOrGetInstructor(String name, String instructorId) {
+    try {
+        return catalog.upsertInstructor(name, instructorId);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+// Assign instructor to subject
+public void assignInstructorToSubject(int subjectId, int instructorId) {
+    try {
+        scheduling.assignInstructor(subjectId, instructorId);
+        System.out.println("Instructor assigned to subject successfully!");
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Create class schedule with conflict detection
+public void createClassSchedule(String day, String timeSlot, int subjectId, int instructorId, String room, int semesterNum) {
+    // Check room conflict
+    try {
+        if (scheduling.isRoomBooked(room, day, timeSlot)) {
+            System.out.println("Conflict: Room " + room + " already booked on " + day + " at " + timeSlot);
+            return;
+        }
+
+        // Check instructor conflict
+        if (scheduling.isInstructorBooked(instructorId, day, timeSlot)) {
+            System.out.println("Conflict: Instructor already scheduled on " + day + " at " + timeSlot);
+            return;
+        }
+
+        // Check if instructor is assigned to subject
+        if (!scheduling.isInstructorAssigned(subjectId, instructorId)) {
+            System.out.println("Error: Instructor not assigned to this subject.");
+            return;
+        }
+
+        // Create class
+        int classId = scheduling.insertClass(day, timeSlot, subjectId, instructorId, room, semesterNum);
+        if (classId != -1) {
+            timetableClass(classId);
+            System.out.println("Class scheduled successfully! Class ID: " + classId);
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Allocate student to class
+public void allocateStudentToClass(String studentId, int classId) {
+    try {
+        int rows = scheduling.allocateStudent(studentId, classId);
+        if (rows > 0) {
+            ClassInfo info = timetableClass(classId);
+            if (info != null) timetableView.students.computeIfAbsent(studentId, k -> new StudentTimetable()).add(info);
+            System.out.println("Student allocated to class successfully!");
+        } else {
+            System.out.println("Allocation failed.");
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Enter regular exam results
+public void enterResults() {
+    Scanner scanner = new Scanner(System.in);
+    System.out.print("Enter student name: ");
+    String name = scanner.nextLine();
+    System.out.print("Enter student ID: ");
+    String studentId = scanner.nextLine();
+    System.out.print("Enter program (if new student): ");
+    String program = scanner.nextLine();
+
+    System.out.print("Enter semester number: ");
+    int semNum = scanner.nextInt();
+    scanner.nextLine();
+
+    System.out.print("Enter course name: ");
+    String courseName = scanner.nextLine();
+
+    System.out.print("Enter subject name: ");
+    String subjectName = scanner.nextLine();
+
+    System.out.print("Enter marks (out of 100): ");
+    double marks = scanner.nextDouble();
+    // Prompts are read first so only the write itself runs on a workload connection with a timeout
+    runWorkload(WorkloadClass.INTERACTIVE_WRITE,
+            () -> recordResult(name, studentId, program, semNum, courseName, subjectName, marks));
+}
+
+// Non-interactive form of enterResults
+public void recordResult(String name, String studentId, String program, int semNum,
+                         String courseName, String subjectName, double marks) {
+    if (isArchived(studentId)) {
+        System.out.println("Student " + studentId + " is archived; their results are read-only.");
+        return;
+    }
+    insertOrGetStudent(name, studentId, program);
+    int semId = insertOrGetSemester(semNum);
+    int courseId = insertOrGetCourse(courseName);
+    int subjectId = insertOrGetSubject(subjectName, courseId);
+    String grade = computeGrade(marks);
+    Double oldGpa = semesterGpa(studentId, semId);
+
+    try {
+        results.insertResult(studentId, semId, subjectId, marks, grade);
+        updateCohortSketch(studentId, semNum, oldGpa, semesterGpa(studentId, semId));
+        System.out.println("Regular result entered successfully!");
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Enter/update supplementary exam
+public void enterSUP() {
+    Scanner scanner = new Scanner(System.in);
+    System.out.print("Enter student ID: ");
+    String studentId = scanner.nextLine();
+    // Archived results live in results_archive, which the hot-table update below would miss
+    if (isArchived(studentId)) {
+        System.out.println("Student " + studentId + " is archived; their results are read-only.");
+        return;
+    }
+    System.out.print("Enter semester number: ");
+    int semNum = scanner.nextInt();
+    scanner.nextLine();
+    System.out.print("Enter subject name: ");
+    String subName = scanner.nextLine();
+    System.out.print("Enter course name: ");
+    String courseName = scanner.nextLine();
+    System.out.print("Enter SUP marks (out of 100): ");
+    double marks = scanner.nextDouble();
+    runWorkload(WorkloadClass.INTERACTIVE_WRITE, () -> recordSup(studentId, semNum, courseName, subName, marks));
+}
+
+// Non-interactive form of enterSUP
+public void recordSup(String studentId, int semNum, String courseName, String subName, double marks) {
+    if (isArchived(studentId)) {
+        System.out.println("Student " + studentId + " is archived; their results are read-only.");
+        return;
+    }
+    int semId = insertOrGetSemester(semNum);
+    int courseId = insertOrGetCourse(courseName);
+    int subId = insertOrGetSubject(subName, courseId);
+    String grade = computeGrade(marks);
+    String status = !"F".equals(grade) ? "Cleared" : "Pending";
+    Double oldGpa = semesterGpa(studentId, semId);
+
+    try {
+        results.insertSupExam(studentId, semId, subId, status, marks);
+
+        // Update or insert in results
+        int rows = results.updateResult(studentId, semId, subId, marks, grade);
+
+        if (rows == 0) {
+            // Insert new
+            results.insertResult(studentId, semId, subId, marks, grade);
+            System.out.println("SUP result inserted as new. Status: " + status);
+        } else {
+            System.out.println("SUP result updated successfully! Status: " + status);
+        }
+        updateCohortSketch(studentId, semNum, oldGpa, semesterGpa(studentId, semId));
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Register for new semester (auto-increment, add fee if structure exists)
+public void registerNewSemester(String studentId) {
+    try {
+        StudentRecord[] found = {null};
+        // The semester bump and the enrollment count it implies commit together
+        inTransaction(() -> {
+            StudentRecord student = students.find(studentId);
+            if (student == null) return;
+            students.setCurrentSemester(studentId, student.currentSemester + 1);
+            if (student.program != null && !student.program.isEmpty()) {
+                fees.adjustEnrollment(student.program, student.currentSemester + 1, 1);
+            }
+            found[0] = student;
+        });
+        if (found[0] == null) {
+            System.out.println("Student not found.");
+            return;
+        }
+        String program = found[0].program;
+        int newSem = found[0].currentSemester + 1;
+        // Insert semester
+        insertOrGetSemester(newSem);
+        // If fee structure exists, note outstanding (no auto-payment)
+        if (program != null && !program.isEmpty()) {
+            Double fee = fees.findFeeAmount(program, newSem);
+            if (fee != null) {
+                System.out.println("Registered for semester " + newSem + ". Fee structure found: $" + fee + " due.");
+            } else {
+                System.out.println("Registered for semester " + newSem + ". No fee structure defined yet.");
+            }
+        } else {
+            System.out.println("Registered for semester " + newSem + ". Program not set.");
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Set fee structure
+public void setFeeStructure(String program, double amount, int semester, String dueDateStr) {
+    try {
+        java.sql.Date dueDate = java.sql.Date.valueOf(dueDateStr);
+        fees.upsertFeeStructure(program, amount, semester, dueDate);
+        fees.refreshExpectedFees(program, semester);
+        System.out.println("Fee structure updated for " + program + " semester " + semester);
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Record student payment
+public void recordPayment(String studentId, int semester, double amount, String receiptNo) {
+    try {
+        java.sql.Date payDate = new java.sql.Date(new java.util.Date().getTime());
+        payments.insertPayment(studentId, semester, amount, payDate, receiptNo);
+        System.out.println("Payment recorded. Receipt: " + receiptNo);
+        // Simulate receipt (no PDF)
+        System.out.println("=== SIMULATED RECEIPT ===");
+        System.out.println("Student ID: " + studentId);
+        System.out.println("Semester: " + semester);
+        System.out.println("Amount Paid: $" + new DecimalFormat("#.##").format(amount));
+        System.out.println("Date: " + payDate);
+        System.out.println("Receipt No: " + receiptNo);
+        System.out.println("========================");
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Calculate outstanding for a student and semester
+public double computeOutstanding(String studentId, int semester) {
+    try {
+        // Get program
+        StudentRecord student = students.find(studentId);
+        if (student == null) return -1; // Student not found
+
+        // Get total fee
+        Double totalFee = fees.findFeeAmount(student.program, semester);
+        if (totalFee == null) return -1; // No fee structure
+
+        // Get total paid
+        double totalPaid = payments.totalPaid(studentId, semester);
+
+        return totalFee - totalPaid;
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return -1;
+}
+
+// Check for any outstanding fees across all semesters
+public boolean hasOutstandingFees(String studentId) {
+    try {
+        StudentRecord student = students.find(studentId);
+        if (student == null) return true;
+        int currentSem = student.currentSemester;
+
+        for (int sem = 1; sem <= currentSem; sem++) {
+            double out = computeOutstanding(studentId, sem);
+            if (out > 0) {
+                return true;
+            }
+        }
+        return false;
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return true;
+    }
+}
+
+// Generate Invoice (console simulation)
+public void generateInvoicePDF(String studentId, int semester) {
+    double outstanding = computeOutstanding(studentId, semester);
+    if (outstanding < 0) {
+        System.out.println("Cannot generate invoice: Invalid data.");
+        return;
+    }
+    System.out.println("=== SIMULATED INVOICE ===");
+    System.out.println("Student ID: " + studentId);
+    System.out.println("Semester: " + semester);
+    System.out.println("Outstanding Amount: $" + new DecimalFormat("#.##").format(outstanding));
+    System.out.println("========================");
+    System.out.println("Invoice generated (console). For PDF, add iText JAR.");
+}
+
+// Finance Reports
+public void generateFinanceReports() {
+    DecimalFormat df = new DecimalFormat("#.##");
+    LocalDate now = LocalDate.now();
+
+    // Total collections
+    try {
+        double totalCollections = payments.totalCollections();
+        System.out.println("Total Collections: $" + df.format(totalCollections));
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+
+    // Overdue accounts
+    System.out.println("\nOverdue Accounts:");
+    System.out.println("Student ID\tSemester\tOutstanding\tDue Date");
+    System.out.println("-----------------------------------------------------");
+    try (PreparedStatement overStmt = prepare(
+            "SELECT DISTINCT s.student_id, fs.semester, fs.due_date " +
+                    "FROM students s JOIN fee_structure fs ON s.program = fs.program " +
+                    "WHERE s.current_semester >= fs.semester")) {
+        ResultSet overRs = overStmt.executeQuery();
+        while (overRs.next()) {
+            String sid = overRs.getString("student_id");
+            int sem = overRs.getInt("semester");
+            java.sql.Date due = overRs.getDate("due_date");
+            if (due.toLocalDate().isBefore(now)) {
+                double out = computeOutstanding(sid, sem);
+                if (out > 0) {
+                    System.out.println(sid + "\t" + sem + "\t\t$" + df.format(out) + "\t\t" + due);
+                }
+            }
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Finance dashboard: reads only the rollup tables
+private void initFinanceRollups() {
+    try {
+        // First start after upgrade: seed the rollups from existing data
+        if (queryInt("SELECT COUNT(*) FROM (SELECT 1 FROM finance_collections_daily LIMIT 1) x") == 0) {
+            payments.rebuildCollectionRollups();
+        }
+        if (queryInt("SELECT COUNT(*) FROM (SELECT 1 FROM finance_expected_fees LIMIT 1) x") == 0) {
+            fees.rebuildExpectedFees();
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Recomputes both rollups from the raw tables, e.g. after a bulk load that bypassed recordPayment
+public void rebuildFinanceRollups() {
+    try {
+        payments.rebuildCollectionRollups();
+        fees.rebuildExpectedFees();
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+public double collectionsBetween(LocalDate from, LocalDate to) {
+    double total = 0;
+    try {
+        for (CollectionRollup row : payments.collections(from == null ? null : java.sql.Date.valueOf(from),
+                to == null ? null : java.sql.Date.valueOf(to))) {
+            total += row.total;
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return total;
+}
+
+public void generateFinanceDashboard(LocalDate from, LocalDate to) {
+    DecimalFormat df = new DecimalFormat("#.##");
+    List<CollectionRollup> inRange;
+    List<CollectionRollup> allTime;
+    List<ExpectedFee> expected;
+    try {
+        inRange = payments.collections(from == null ? null : java.sql.Date.valueOf(from),
+                to == null ? null : java.sql.Date.valueOf(to));
+        allTime = from == null && to == null ? inRange : payments.collections(null, null);
+        expected = fees.expectedFees();
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return;
+    }
+
+    double total = 0;
+    int count = 0;
+    Map<String, Double> byProgram = new TreeMap<>();
+    Map<Integer, Double> bySemester = new TreeMap<>();
+    Map<LocalDate, Double> byDay = new TreeMap<>();
+    for (CollectionRollup row : inRange) {
+        total += row.total;
+        count += row.payments;
+        byProgram.merge(row.program.isEmpty() ? "(no program)" : row.program, row.total, Double::sum);
+        bySemester.merge(row.semester, row.total, Double::sum);
+        byDay.merge(row.date, row.total, Double::sum);
+    }
+    System.out.println("=== Finance Dashboard (" + (from == null ? "start" : from) + " to " + (to == null ? "today" : to) + ") ===");
+    System.out.println("Collections: $" + df.format(total) + " from " + count + " payments");
+    System.out.println("\nBy Program:");
+    byProgram.forEach((program, amount) -> System.out.println("  " + program + "\t$" + df.format(amount)));
+    System.out.println("\nBy Semester:");
+    bySemester.forEach((sem, amount) -> System.out.println("  Semester " + sem + "\t$" + df.format(amount)));
+    System.out.println("\nDaily (most recent 14 days with payments):");
+    List<LocalDate> days = new ArrayList<>(byDay.keySet());
+    for (LocalDate day : days.subList(Math.max(0, days.size() - 14), days.size())) {
+        System.out.println("  " + day + "\t$" + df.format(byDay.get(day)));
+    }
+
+    Map<String, Double> collectedByKey = new HashMap<>();
+    for (CollectionRollup row : allTime) {
+        collectedByKey.merge(row.program + "|" + row.semester, row.total, Double::sum);
+    }
+    System.out.println("\nExpected vs Collected (all time):");
+    System.out.println("Program\tSemester\tEnrolled\tExpected\tCollected\tGap");
+    for (ExpectedFee fee : expected) {
+        double collected = collectedByKey.getOrDefault(fee.program + "|" + fee.semester, 0.0);
+        System.out.println(fee.program + "\t" + fee.semester + "\t\t" + fee.enrolledStudents + "\t\t$" +
+                df.format(fee.expectedTotal()) + "\t\t$" + df.format(collected) + "\t\t$" +
+                df.format(fee.expectedTotal() - collected));
+    }
+    System.out.println("=== End Finance Dashboard ===");
+}
+
+private static class GradeBand {
+    final int minMarks;
+    final String grade;
+    final double points;
+
+    GradeBand(int minMarks, String grade, double points) {
+        this.minMarks = minMarks;
+        this.grade = grade;
+        this.points = points;
+    }
+}
+
+// Grading scale, highest band first; marks below the last band fail. computeGrade, gradeToPoints and
+// their SQL forms are all derived from this table.
+private static final GradeBand[] GRADE_BANDS = {
+        new GradeBand(90, "A", 4.0),
+        new GradeBand(80, "B", 3.0),
+        new GradeBand(70, "C", 2.0),
+        new GradeBand(60, "D", 1.0),
+};
+private static final String FAIL_GRADE = "F";
+
+// CASE over the grade bands yielding the grade letter, or its points when points is true
+private static String gradeBandSql(String marksExpr, boolean points) {
+    StringBuilder sql = new StringBuilder("CASE");
+    for (GradeBand band : GRADE_BANDS) {
+        sql.append(" WHEN ").append(marksExpr).append(" >= ").append(band.minMarks)
+                .append(" THEN ").append(points ? String.valueOf(band.points) : "'" + band.grade + "'");
+    }
+    return sql.append(" ELSE ").append(points ? "0.0" : "'" + FAIL_GRADE + "'").append(" END").toString();
+}
+
+// SQL form of computeGrade + gradeToPoints over results alias r
+private static final String GRADE_POINTS_SQL = gradeBandSql("r.marks", true);
+
+// SQL form of computeGrade over any marks expression
+private static String gradeSql(String marksExpr) {
+    return gradeBandSql(marksExpr, false);
+}
+
+private String computeGrade(double marks) {
+    for (GradeBand band : GRADE_BANDS) {
+        if (marks >= band.minMarks) return band.grade;
+    }
+    return FAIL_GRADE;
+}
+
+private double gradeToPoints(String grade) {
+    for (GradeBand band : GRADE_BANDS) {
+        if (band.grade.equals(grade)) return band.points;
+    }
+    return 0.0;
+}
+
+public double computeGPA(String studentId, int semesterNum) {
+    if (semesterNum == -1) return computeOverallGPA(studentId);
+    try {
+        return gpaOf(results.findMarks(studentId, semesterNum));
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return 0;
+}
+
+private double computeOverallGPA(String studentId) {
+    try {
+        return gpaOf(results.findMarks(studentId, -1));
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return 0;
+}
+
+private double gpaOf(List<Double> marksList) {
+    double totalPoints = 0;
+    double totalCredits = 0;
+    for (double marks : marksList) {
+        String grade = computeGrade(marks);
+        double points = gradeToPoints(grade);
+        totalPoints += points * 4;
+        totalCredits += 4;
+    }
+    return totalCredits > 0 ? totalPoints / totalCredits : 0;
+}
+
+private String getSUPStatus(String studentId, int semNum, String subName, String courseName) {
+    try {
+        int semId = findSemesterId(semNum);
+        int subId = findSubjectId(subName, courseName);
+        if (semId == -1 || subId == -1) return "";
+        PreparedStatement pstmt = prepare(
+                "SELECT status FROM " + tableFor("sup_exams", studentId) + " se " +
+                        "WHERE se.student_id = ? AND se.semester_id = ? AND se.subject_id = ?");
+        pstmt.setString(1, studentId);
+        pstmt.setInt(2, semId);
+        pstmt.setInt(3, subId);
+        ResultSet rs = pstmt.executeQuery();
+        if (rs.next()) {
+            return rs.getString("status");
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return "";
+}
+
+// Generate transcripts with fee check and historical view
+public void generateTranscript(String studentId, int semesterNum) {
+    if (hasOutstandingFees(studentId)) {
+        System.out.println("Access denied: Outstanding fees pending.");
+        return;
+    }
+    DecimalFormat df = new DecimalFormat("#.##");
+    System.out.println("=== Transcript for Student ID: " + studentId +
+            (semesterNum == -1 ? " (All Semesters)" : " (Semester " + semesterNum + ")") + " ===");
+    String query;
+    String resultsTable = tableFor("results", studentId);
+    if (semesterNum == -1) {
+        query = "SELECT s.semester_number, c.course_name, sub.subject_name, r.marks, r.grade FROM " + resultsTable + " r " +
+                "JOIN semesters s ON r.semester_id = s.id " +
+                "JOIN subjects sub ON r.subject_id = sub.id " +
+                "JOIN courses c ON sub.course_id = c.id " +
+                "WHERE r.student_id = ? ORDER BY s.semester_number, c.course_name, sub.subject_name";
+    } else {
+        query = "SELECT c.course_name, sub.subject_name, r.marks, r.grade FROM " + resultsTable + " r " +
+                "JOIN subjects sub ON r.subject_id = sub.id " +
+                "JOIN courses c ON sub.course_id = c.id " +
+                "WHERE r.student_id = ? AND r.semester_id = ? ORDER BY c.course_name, sub.subject_name";
+    }
+    try (PreparedStatement pstmt = prepare(query)) {
+        pstmt.setString(1, studentId);
+        if (semesterNum != -1) pstmt.setInt(2, findSemesterId(semesterNum));
+        ResultSet rs = pstmt.executeQuery();
+        Map<Integer, List<String>> semData = new HashMap<>();
+        int currentSem = 0;
+        while (rs.next()) {
+            int sem = semesterNum == -1 ? rs.getInt("semester_number") : semesterNum;
+            String line = rs.getString("course_name") + " - " + rs.getString("subject_name") + "\t" +
+                    rs.getDouble("marks") + "\t" + rs.getString("grade");
+            semData.computeIfAbsent(sem, k -> new ArrayList<>()).add(line);
+            currentSem = sem;
+        }
+        for (int sem : semData.keySet()) {
+            System.out.println("\nSemester " + sem + ":");
+            System.out.println("Course - Subject\tMarks\tGrade");
+            System.out.println("------------------------------------------");
+            for (String line : semData.get(sem)) {
+                System.out.println(line);
+                // SUP status (simplified, assume course/sub known)
+                // In full, query by sub
+            }
+            double gpa = computeGPA(studentId, sem);
+            System.out.println("GPA: " + df.format(gpa));
+        }
+        if (semesterNum == -1) {
+            double overall = computeOverallGPA(studentId);
+            System.out.println("\nOverall GPA: " + df.format(overall));
+        }
+        System.out.println("=== End Transcript ===");
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Fixed-resolution GPA histogram over [0, 4]; supports removal so it can be maintained incrementally
+public static class GpaSketch {
+    private static final int BINS_PER_POINT = 100;
+    private final int[] bins = new int[4 * BINS_PER_POINT + 1];
+    private int total;
+
+    private static int bin(double gpa) {
+        return (int) Math.round(Math.max(0, Math.min(4, gpa)) * BINS_PER_POINT);
+    }
+
+    public synchronized void add(double gpa) {
+        bins[bin(gpa)]++;
+        total++;
+    }
+
+    public synchronized void remove(double gpa) {
+        int b = bin(gpa);
+        if (bins[b] > 0) {
+            bins[b]--;
+            total--;
+        }
+    }
+
+    public synchronized int size() {
+        return total;
+    }
+
+    // Percentage of the cohort below this GPA, counting ties as half
+    public synchronized double percentileOf(double gpa) {
+        if (total == 0) return 0;
+        int b = bin(gpa);
+        long below = 0;
+        for (int i = 0; i < b; i++) below += bins[i];
+        return 100.0 * (below + bins[b] / 2.0) / total;
+    }
+}
+
+public static class SemesterStanding {
+    public final int semester;
+    public final double gpa;
+    public final double percentile; // -1 when the semester has no results or no cohort
+
+    SemesterStanding(int semester, double gpa, double percentile) {
+        this.semester = semester;
+        this.gpa = gpa;
+        this.percentile = percentile;
+    }
+}
+
+private static String cohortKey(String program, int semesterNum) {
+    return (program == null ? "" : program) + "|" + semesterNum;
+}
+
+// Precomputes every (program, semester) sketch from one grouped query
+private void buildCohortSketches() {
+    try (Statement stmt = createStatement()) {
+        ResultSet rs = stmt.executeQuery(
+                "SELECT s.program, sem.semester_number, AVG(" + GRADE_POINTS_SQL + ") AS gpa " +
+                        "FROM results r JOIN semesters sem ON r.semester_id = sem.id " +
+                        "JOIN students s ON r.student_id = s.student_id " +
+                        "GROUP BY r.student_id, s.program, sem.semester_number");
+        cohortSketches.clear();
+        while (rs.next()) {
+            cohortSketches.computeIfAbsent(cohortKey(rs.getString("program"), rs.getInt("semester_number")),
+                    k -> new GpaSketch()).add(rs.getDouble("gpa"));
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Returns the student's GPA for one semester id, or null when they have no results there
+private Double semesterGpa(String studentId, int semId) {
+    try (PreparedStatement pstmt = prepare(
+            "SELECT AVG(" + GRADE_POINTS_SQL + ") FROM " + tableFor("results", studentId) +
+                    " r WHERE r.student_id = ? AND r.semester_id = ?")) {
+        pstmt.setString(1, studentId);
+        pstmt.setInt(2, semId);
+        ResultSet rs = pstmt.executeQuery();
+        if (rs.next()) {
+            double gpa = rs.getDouble(1);
+            return rs.wasNull() ? null : gpa;
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return null;
+}
+
+private String programOf(String studentId) {
+    try {
+        StudentRecord student = students.find(studentId);
+        if (student != null) return student.program;
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return null;
+}
+
+// Replaces the student's old semester GPA with the new one in their cohort sketch
+private void updateCohortSketch(String studentId, int semesterNum, Double oldGpa, Double newGpa) {
+    GpaSketch sketch = cohortSketches.computeIfAbsent(cohortKey(programOf(studentId), semesterNum), k -> new GpaSketch());
+    if (oldGpa != null) sketch.remove(oldGpa);
+    if (newGpa != null) sketch.add(newGpa);
+}
+
+// GPA for every requested semester from one grouped query, placed within the program cohort
+public List<SemesterStanding> compareSemesters(String studentId, List<Integer> semesters) {
+    List<SemesterStanding> standings = new ArrayList<>();
+    if (semesters.isEmpty()) return standings;
+    Map<Integer, Double> gpas = new HashMap<>();
+    String placeholders = String.join(", ", Collections.nCopies(semesters.size(), "?"));
+    try (PreparedStatement pstmt = prepare(
+            "SELECT sem.semester_number, AVG(" + GRADE_POINTS_SQL + ") AS gpa " +
+                    "FROM " + tableFor("results", studentId) + " r JOIN semesters sem ON r.semester_id = sem.id " +
+                    "WHERE r.student_id = ? AND sem.semester_number IN (" + placeholders + ") " +
+                    "GROUP BY sem.semester_number")) {
+        pstmt.setString(1, studentId);
+        for (int i = 0; i < semesters.size(); i++) {
+            pstmt.setInt(i + 2, semesters.get(i));
+        }
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            gpas.put(rs.getInt("semester_number"), rs.getDouble("gpa"));
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    String program = programOf(studentId);
+    for (int sem : semesters) {
+        Double gpa = gpas.get(sem);
+        GpaSketch sketch = cohortSketches.get(cohortKey(program, sem));
+        double percentile = gpa != null && sketch != null && sketch.size() > 0 ? sketch.percentileOf(gpa) : -1;
+        standings.add(new SemesterStanding(sem, gpa != null ? gpa : 0, percentile));
+    }
+    return standings;
+}
+
+public void comparePerformance(String studentId, List<Integer> semesters) {
+    System.out.println("=== Performance Comparison for Student ID: " + studentId + " ===");
+    System.out.println("Semester\tGPA\tPercentile (program cohort)");
+    System.out.println("------------------------------------------");
+    DecimalFormat df = new DecimalFormat("#.##");
+    for (SemesterStanding standing : compareSemesters(studentId, semesters)) {
+        System.out.println(standing.semester + "\t\t" + df.format(standing.gpa) + "\t" +
+                (standing.percentile < 0 ? "-" : df.format(standing.percentile)));
+    }
+    System.out.println("=== End Comparison ===");
+}
+
+// Subject analytics: one streaming scan of results with SUP outcome and class instructor attached
+private static final String[] GRADES = {"A", "B", "C", "D", "F"};
+private static final int ANALYTICS_BATCH_SIZE = 1000;
+// A result's instructor is whoever taught the class the student took for that subject and semester; the
+// per-student grouping keeps each result in exactly one instructor group even with several classes
+private static final String SUBJECT_ANALYTICS_QUERY =
+        "SELECT c.course_name, sub.subject_name, sem.semester_number, " +
+                "COALESCE(i.name, 'Unassigned') AS instructor_name, r.marks, sup.cleared_count " +
+                "FROM results r " +
+                "JOIN subjects sub ON r.subject_id = sub.id " +
+                "JOIN courses c ON sub.course_id = c.id " +
+                "JOIN semesters sem ON r.semester_id = sem.id " +
+                "LEFT JOIN (SELECT sc.student_id, cl.subject_id, cl.semester_number, MIN(cl.instructor_id) AS instructor_id " +
+                "FROM student_classes sc JOIN classes cl ON sc.class_id = cl.id " +
+                "GROUP BY sc.student_id, cl.subject_id, cl.semester_number) taught " +
+                "ON taught.student_id = r.student_id AND taught.subject_id = r.subject_id " +
+                "AND taught.semester_number = sem.semester_number " +
+                "LEFT JOIN instructors i ON taught.instructor_id = i.id " +
+                "LEFT JOIN (SELECT student_id, semester_id, subject_id, " +
+                "SUM(CASE WHEN status = 'Cleared' THEN 1 ELSE 0 END) AS cleared_count " +
+                "FROM sup_exams GROUP BY student_id, semester_id, subject_id) sup " +
+                "ON sup.student_id = r.student_id AND sup.semester_id = r.semester_id AND sup.subject_id = r.subject_id";
+
+private static class AnalyticsRow {
+    final String subject;
+    final int semester;
+    final String instructor;
+    final double marks;
+    final int supCleared; // -1 when the student never sat a SUP for this subject
+
+    AnalyticsRow(String subject, int semester, String instructor, double marks, int supCleared) {
+        this.subject = subject;
+        this.semester = semester;
+        this.instructor = instructor;
+        this.marks = marks;
+        this.supCleared = supCleared;
+    }
+}
+
+// Accumulator for one (subject, semester, instructor) group; partitions are merged with merge()
+public static class SubjectStats {
+    public final String subject;
+    public final int semester;
+    public final String instructor;
+    private final int[] gradeCounts = new int[GRADES.length];
+    private double[] marks = new double[16];
+    private int count;
+    private double sum;
+    private int failed;
+    private int supTaken;
+    private int supCleared;
+
+    SubjectStats(String subject, int semester, String instructor) {
+        this.subject = subject;
+        this.semester = semester;
+        this.instructor = instructor;
+    }
+
+    void add(double mark, String grade, int supClearedCount) {
+        if (count == marks.length) marks = Arrays.copyOf(marks, count * 2);
+        marks[count++] = mark;
+        sum += mark;
+        gradeCounts[Arrays.asList(GRADES).indexOf(grade)]++;
+        if ("F".equals(grade)) failed++;
+        if (supClearedCount >= 0) {
+            supTaken++;
+            if (supClearedCount > 0) supCleared++;
+        }
+    }
+
+    void merge(SubjectStats other) {
+        if (count + other.count > marks.length) marks = Arrays.copyOf(marks, count + other.count);
+        System.arraycopy(other.marks, 0, marks, count, other.count);
+        count += other.count;
+        sum += other.sum;
+        failed += other.failed;
+        supTaken += other.supTaken;
+        supCleared += other.supCleared;
+        for (int g = 0; g < GRADES.length; g++) gradeCounts[g] += other.gradeCounts[g];
+    }
+
+    public int getCount() { return count; }
+    public int getGradeCount(String grade) { return gradeCounts[Arrays.asList(GRADES).indexOf(grade)]; }
+    public double getMean() { return count > 0 ? sum / count : 0; }
+    public double getFailRate() { return count > 0 ? (double) failed / count : 0; }
+    public int getSupTaken() { return supTaken; }
+    public double getSupClearanceRate() { return supTaken > 0 ? (double) supCleared / supTaken : 0; }
+
+    public double getMedian() {
+        if (count == 0) return 0;
+        double[] sorted = Arrays.copyOf(marks, count);
+        Arrays.sort(sorted);
+        int mid = count / 2;
+        return count % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+}
+
+private void accumulate(Map<String, SubjectStats> stats, AnalyticsRow row) {
+    String key = row.subject + '|' + row.semester + '|' + row.instructor;
+    stats.computeIfAbsent(key, k -> new SubjectStats(row.subject, row.semester, row.instructor))
+            .add(row.marks, computeGrade(row.marks), row.supCleared);
+}
+
+// Streams the joined rows once; worker partitions each own an accumulator map, merged when the scan ends
+public List<SubjectStats> computeSubjectAnalytics() {
+    int partitions = Math.max(1, Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(partitions);
+    BlockingQueue<List<AnalyticsRow>> queue = new ArrayBlockingQueue<>(partitions * 2);
+    List<Future<Map<String, SubjectStats>>> parts = new ArrayList<>();
+    for (int p = 0; p < partitions; p++) {
+        parts.add(pool.submit(() -> {
+            Map<String, SubjectStats> local = new HashMap<>();
+            while (true) {
+                List<AnalyticsRow> batch = queue.take();
+                if (batch.isEmpty()) return local;
+                for (AnalyticsRow row : batch) accumulate(local, row);
+            }
+        }));
+    }
+
+    Map<String, SubjectStats> merged = new HashMap<>();
+    try {
+        try (PreparedStatement pstmt = prepare(SUBJECT_ANALYTICS_QUERY,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(backend.streamingFetchSize); // stream rows instead of buffering the whole result
+            ResultSet rs = pstmt.executeQuery();
+            List<AnalyticsRow> batch = new ArrayList<>(ANALYTICS_BATCH_SIZE);
+            while (rs.next()) {
+                int cleared = rs.getInt("cleared_count");
+                if (rs.wasNull()) cleared = -1;
+                batch.add(new AnalyticsRow(rs.getString("course_name") + " - " + rs.getString("subject_name"),
+                        rs.getInt("semester_number"), rs.getString("instructor_name"), rs.getDouble("marks"), cleared));
+                if (batch.size() == ANALYTICS_BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(ANALYTICS_BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) queue.put(batch);
+        } catch (SQLException e) {
+            sqlFailed(e);
+        } finally {
+            for (int p = 0; p < partitions; p++) queue.put(Collections.emptyList());
+        }
+        for (Future<Map<String, SubjectStats>> part : parts) {
+            for (Map.Entry<String, SubjectStats> entry : part.get().entrySet()) {
+                SubjectStats existing = merged.putIfAbsent(entry.getKey(), entry.getValue());
+                if (existing != null) existing.merge(entry.getValue());
+            }
+        }
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+        e.printStackTrace();
+    } finally {
+        pool.shutdownNow();
+    }
+
+    List<SubjectStats> report = new ArrayList<>(merged.values());
+    report.sort(Comparator.comparing((SubjectStats s) -> s.subject)
+            .thenComparingInt(s -> s.semester)
+            .thenComparing(s -> s.instructor));
+    return report;
+}
+
+public void generateSubjectAnalyticsReport() {
+    DecimalFormat df = new DecimalFormat("#.##");
+    System.out.println("=== Subject Analytics ===");
+    System.out.println("Course - Subject\tSem\tInstructor\tN\tMean\tMedian\tFail%\tSUP Cleared%\tA/B/C/D/F");
+    System.out.println("--------------------------------------------------------------------------------------------");
+    for (SubjectStats s : computeSubjectAnalytics()) {
+        StringBuilder dist = new StringBuilder();
+        for (String g : GRADES) {
+            if (dist.length() > 0) dist.append('/');
+            dist.append(s.getGradeCount(g));
+        }
+        System.out.println(s.subject + "\t" + s.semester + "\t" + s.instructor + "\t" + s.getCount() + "\t" +
+                df.format(s.getMean()) + "\t" + df.format(s.getMedian()) + "\t" +
+                df.format(s.getFailRate() * 100) + "\t" +
+                (s.getSupTaken() > 0 ? df.format(s.getSupClearanceRate() * 100) + " (" + s.getSupTaken() + ")" : "-") +
+                "\t" + dist);
+    }
+    System.out.println("=== End Subject Analytics ===");
+}
+
+// At-risk detection: bulk cohort queries scored in parallel chunks, ranked list written to at_risk_students
+private static final int AT_RISK_CHUNK_SIZE = 5000;
+private static final LocalTime AT_RISK_JOB_TIME = LocalTime.of(2, 0);
+private static final String SEMESTER_GPA_QUERY =
+        "SELECT r.student_id, sem.semester_number, AVG(" + GRADE_POINTS_SQL + ") AS gpa, " +
+                "SUM(CASE WHEN r.marks < 60 THEN 1 ELSE 0 END) AS failing " +
+                "FROM results r JOIN semesters sem ON r.semester_id = sem.id " +
+                "GROUP BY r.student_id, sem.semester_number";
+// A SUP counts as pending until some attempt for that subject has cleared
+private static final String PENDING_SUP_QUERY =
+        "SELECT student_id, COUNT(*) AS pending FROM (" +
+                "SELECT student_id, semester_id, subject_id FROM sup_exams " +
+                "GROUP BY student_id, semester_id, subject_id " +
+                "HAVING SUM(CASE WHEN status = 'Cleared' THEN 1 ELSE 0 END) = 0) p " +
+                "GROUP BY student_id";
+private static final String UNPAID_FEES_QUERY =
+        "SELECT s.student_id, SUM(fs.fee_amount - COALESCE(p.paid, 0)) AS unpaid " +
+                "FROM students s JOIN fee_structure fs ON s.program = fs.program AND fs.semester <= s.current_semester " +
+                "LEFT JOIN (SELECT student_id, semester_number, SUM(amount_paid) AS paid " +
+                "FROM student_payments GROUP BY student_id, semester_number) p " +
+                "ON p.student_id = s.student_id AND p.semester_number = fs.semester " +
+                "WHERE fs.fee_amount - COALESCE(p.paid, 0) > 0 " +
+                "GROUP BY s.student_id";
+
+private static class StudentRiskProfile {
+    final String studentId;
+    final String name;
+    final TreeMap<Integer, Double> semesterGpa = new TreeMap<>();
+    int failing;
+    int pendingSups;
+    double unpaid;
+
+    StudentRiskProfile(String studentId, String name) {
+        this.studentId = studentId;
+        this.name = name;
+    }
+}
+
+public static class AtRiskStudent {
+    public final String studentId;
+    public final String name;
+    public final double score;
+    public final String reasons;
+
+    AtRiskStudent(String studentId, String name, double score, String reasons) {
+        this.studentId = studentId;
+        this.name = name;
+        this.score = score;
+        this.reasons = reasons;
+    }
+}
+
+private AtRiskStudent scoreRisk(StudentRiskProfile p) {
+    double score = 0;
+    List<String> reasons = new ArrayList<>();
+    if (p.semesterGpa.size() >= 2) {
+        Double[] gpas = p.semesterGpa.values().toArray(new Double[0]);
+        double last = gpas[gpas.length - 1];
+        double prev = gpas[gpas.length - 2];
+        if (last < prev) {
+            score += (prev - last) * 10;
+            reasons.add("GPA falling " + String.format("%.2f", prev) + "->" + String.format("%.2f", last));
+            if (gpas.length >= 3 && prev < gpas[gpas.length - 3]) {
+                score += 5;
+                reasons.add("sustained decline");
+            }
+        }
+    }
+    if (p.pendingSups > 0) {
+        score += 10 * p.pendingSups;
+        reasons.add(p.pendingSups + " pending SUP(s)");
+    }
+    if (p.unpaid > 0 && p.failing > 0) {
+        score += 20 + 5 * p.failing;
+        reasons.add("unpaid fees with " + p.failing + " failing grade(s)");
+    }
+    return reasons.isEmpty() ? null : new AtRiskStudent(p.studentId, p.name, score, String.join("; ", reasons));
+}
+
+// Loads the whole cohort with four bulk queries, then scores chunks in parallel
+public List<AtRiskStudent> runAtRiskDetection() {
+    Map<String, StudentRiskProfile> profiles = new HashMap<>();
+    try (Statement stmt = createStatement()) {
+        ResultSet rs = stmt.executeQuery("SELECT student_id, name FROM students");
+        while (rs.next()) {
+            String sid = rs.getString("student_id");
+            profiles.put(sid, new StudentRiskProfile(sid, rs.getString("name")));
+        }
+        rs = stmt.executeQuery(SEMESTER_GPA_QUERY);
+        while (rs.next()) {
+            StudentRiskProfile p = profiles.get(rs.getString("student_id"));
+            if (p == null) continue;
+            p.semesterGpa.put(rs.getInt("semester_number"), rs.getDouble("gpa"));
+            p.failing += rs.getInt("failing");
+        }
+        rs = stmt.executeQuery(PENDING_SUP_QUERY);
+        while (rs.next()) {
+            StudentRiskProfile p = profiles.get(rs.getString("student_id"));
+            if (p != null) p.pendingSups = rs.getInt("pending");
+        }
+        rs = stmt.executeQuery(UNPAID_FEES_QUERY);
+        while (rs.next()) {
+            StudentRiskProfile p = profiles.get(rs.getString("student_id"));
+            if (p != null) p.unpaid = rs.getDouble("unpaid");
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return Collections.emptyList();
+    }
+
+    List<StudentRiskProfile> all = new ArrayList<>(profiles.values());
+    List<Callable<List<AtRiskStudent>>> chunks = new ArrayList<>();
+    for (int from = 0; from < all.size(); from += AT_RISK_CHUNK_SIZE) {
+        List<StudentRiskProfile> chunk = all.subList(from, Math.min(from + AT_RISK_CHUNK_SIZE, all.size()));
+        chunks.add(() -> {
+            List<AtRiskStudent> flagged = new ArrayList<>();
+            for (StudentRiskProfile p : chunk) {
+                AtRiskStudent risk = scoreRisk(p);
+                if (risk != null) flagged.add(risk);
+            }
+            return flagged;
+        });
+    }
+    List<AtRiskStudent> ranked = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    try {
+        for (Future<List<AtRiskStudent>> f : pool.invokeAll(chunks)) {
+            ranked.addAll(f.get());
+        }
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return Collections.emptyList();
+    } catch (ExecutionException e) {
+        e.printStackTrace();
+        return Collections.emptyList();
+    } finally {
+        pool.shutdown();
+    }
+    ranked.sort(Comparator.comparingDouble((AtRiskStudent r) -> r.score).reversed()
+            .thenComparing(r -> r.studentId));
+    saveAtRiskList(ranked);
+    return ranked;
+}
+
+private void saveAtRiskList(List<AtRiskStudent> ranked) {
+    java.sql.Date runDate = java.sql.Date.valueOf(LocalDate.now());
+    try {
+        db().setAutoCommit(false);
+        try (PreparedStatement del = prepare("DELETE FROM at_risk_students WHERE run_date = ?");
+             PreparedStatement ins = prepare(
+                     "INSERT INTO at_risk_students (run_date, rank_no, student_id, score, reasons) VALUES (?, ?, ?, ?, ?)")) {
+            del.setDate(1, runDate);
+            del.executeUpdate();
+            int rank = 0;
+            for (AtRiskStudent r : ranked) {
+                ins.setDate(1, runDate);
+                ins.setInt(2, ++rank);
+                ins.setString(3, r.studentId);
+                ins.setDouble(4, r.score);
+                ins.setString(5, r.reasons.length() > 255 ? r.reasons.substring(0, 255) : r.reasons);
+                ins.addBatch();
+                if (rank % 1000 == 0) ins.executeBatch();
+            }
+            ins.executeBatch();
+            db().commit();
+        } catch (SQLException e) {
+            db().rollback();
+            throw e;
+        } finally {
+            db().setAutoCommit(true);
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+public void generateAtRiskReport() {
+    long start = System.currentTimeMillis();
+    List<AtRiskStudent> ranked = runAtRiskDetection();
+    DecimalFormat df = new DecimalFormat("#.##");
+    System.out.println("=== At-Risk Students (" + ranked.size() + " flagged in " +
+            (System.currentTimeMillis() - start) + " ms) ===");
+    System.out.println("Rank\tStudent ID\tName\tScore\tReasons");
+    System.out.println("------------------------------------------------------------");
+    int rank = 0;
+    for (AtRiskStudent r : ranked) {
+        if (++rank > 50) {
+            System.out.println("... full list saved to at_risk_students");
+            break;
+        }
+        System.out.println(rank + "\t" + r.studentId + "\t" + r.name + "\t" + df.format(r.score) + "\t" + r.reasons);
+    }
+    System.out.println("=== End At-Risk Report ===");
+}
+
+// Runs the detection job every night at AT_RISK_JOB_TIME on a daemon thread
+public void scheduleAtRiskDetection() {
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "at-risk-job");
+        t.setDaemon(true);
+        return t;
+    });
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime next = now.toLocalDate().atTime(AT_RISK_JOB_TIME);
+    if (!next.isAfter(now)) next = next.plusDays(1);
+    scheduler.scheduleAtFixedRate(() -> {
+        try {
+            List<AtRiskStudent> ranked = runWorkload(WorkloadClass.REPORT, this::runAtRiskDetection);
+            if (ranked != null) System.out.println("\n[at-risk job] flagged " + ranked.size() + " students");
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+}
+
+// Student timetables: in-memory weekly view per student, built from one join and maintained on allocation
+private static final String[] WEEK_DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"};
+private static final String TIMETABLE_QUERY =
+        "SELECT sc.student_id, c.id, c.day, c.time_slot, c.room, c.semester_number, sub.subject_name, " +
+                "COALESCE(i.name, 'Unassigned') AS instructor_name " +
+                "FROM classes c JOIN subjects sub ON c.subject_id = sub.id " +
+                "LEFT JOIN instructors i ON c.instructor_id = i.id " +
+                "LEFT JOIN student_classes sc ON sc.class_id = c.id";
+
+public static class ClassInfo {
+    public final int classId;
+    public final String day;
+    public final String timeSlot;
+    public final String subject;
+    public final String instructor;
+    public final String room;
+    public final int semester;
+    final String cell;
+    final int startMinute;
+    final int endMinute; // -1 when the slot has no parseable end
+
+    ClassInfo(int classId, String day, String timeSlot, String subject, String instructor, String room, int semester) {
+        this.classId = classId;
+        this.day = day;
+        this.timeSlot = timeSlot;
+        this.subject = subject;
+        this.instructor = instructor;
+        this.room = room;
+        this.semester = semester;
+        this.cell = dayIndex(day) + "|" + (timeSlot == null ? "" : timeSlot.trim());
+        this.startMinute = slotStartMinute(timeSlot);
+        this.endMinute = slotEndMinute(timeSlot, startMinute);
+    }
+}
+
+// Sorted ids of the classes a student is allocated to
+private static class StudentTimetable {
+    private int[] classIds = new int[0];
+
+    synchronized void add(ClassInfo info) {
+        int pos = Arrays.binarySearch(classIds, info.classId);
+        if (pos >= 0) return;
+        pos = -pos - 1;
+        int[] grown = new int[classIds.length + 1];
+        System.arraycopy(classIds, 0, grown, 0, pos);
+        grown[pos] = info.classId;
+        System.arraycopy(classIds, pos, grown, pos + 1, classIds.length - pos);
+        classIds = grown;
+    }
+
+    synchronized int[] classIds() {
+        return classIds.clone();
+    }
+}
+
+// Classes and student timetables are rebuilt together and swapped in as one, so readers never see a partial view
+private static class TimetableView {
+    final Map<Integer, ClassInfo> classes = new ConcurrentHashMap<>();
+    final Map<String, StudentTimetable> students = new ConcurrentHashMap<>();
+}
+
+private volatile TimetableView timetableView = new TimetableView();
+
+private static int dayIndex(String day) {
+    for (int d = 0; d < WEEK_DAYS.length; d++) {
+        if (day != null && day.trim().length() >= 3 && WEEK_DAYS[d].regionMatches(true, 0, day.trim(), 0, 3)) return d;
+    }
+    return WEEK_DAYS.length; // unrecognised days sort last
+}
+
+private static final java.util.regex.Pattern SLOT_START = java.util.regex.Pattern.compile(
+        "^\\s*(\\d{1,2})(?:[:.](\\d{2}))?\\s*([ap])?", java.util.regex.Pattern.CASE_INSENSITIVE);
+
+// Minutes after midnight at which a slot such as "9:00-10:00" or "2pm-3pm" starts; unparseable slots sort last
+private static int slotStartMinute(String timeSlot) {
+    if (timeSlot == null) return Integer.MAX_VALUE;
+    java.util.regex.Matcher m = SLOT_START.matcher(timeSlot);
+    if (!m.find()) return Integer.MAX_VALUE;
+    int hour = Integer.parseInt(m.group(1));
+    int minute = m.group(2) == null ? 0 : Integer.parseInt(m.group(2));
+    if (m.group(3) != null) {
+        hour = hour % 12 + (m.group(3).equalsIgnoreCase("p") ? 12 : 0);
+    }
+    return hour * 60 + minute;
+}
+
+private static final java.util.regex.Pattern SLOT_END = java.util.regex.Pattern.compile(
+        "(?:-|to)\\s*(\\d{1,2})(?:[:.](\\d{2}))?\\s*([ap])?", java.util.regex.Pattern.CASE_INSENSITIVE);
+
+// Minutes after midnight at which a slot ends, or -1 when it has no end after its start
+private static int slotEndMinute(String timeSlot, int startMinute) {
+    if (timeSlot == null || startMinute == Integer.MAX_VALUE) return -1;
+    java.util.regex.Matcher m = SLOT_END.matcher(timeSlot);
+    if (!m.find()) return -1;
+    int hour = Integer.parseInt(m.group(1));
+    int minute = m.group(2) == null ? 0 : Integer.parseInt(m.group(2));
+    if (m.group(3) != null) {
+        hour = hour % 12 + (m.group(3).equalsIgnoreCase("p") ? 12 : 0);
+    } else if (hour * 60 + minute <= startMinute && hour < 12) {
+        hour += 12; // "11:00-1:00" runs past noon
+    }
+    int end = hour * 60 + minute;
+    return end > startMinute ? end : -1;
+}
+
+private static final Comparator<ClassInfo> TIMETABLE_ORDER = Comparator.comparingInt((ClassInfo c) -> dayIndex(c.day))
+        .thenComparingInt(c -> c.startMinute)
+        .thenComparing(c -> c.timeSlot, Comparator.nullsLast(Comparator.naturalOrder()));
+
+// Two classes clash when their time ranges overlap; slots without a parseable range clash only on identical text
+private static boolean slotsOverlap(ClassInfo a, ClassInfo b) {
+    if (a.endMinute == -1 || b.endMinute == -1) return a.cell.equals(b.cell);
+    return a.startMinute < b.endMinute && b.startMinute < a.endMinute;
+}
+
+private ClassInfo readClassInfo(ResultSet rs) throws SQLException {
+    return new ClassInfo(rs.getInt("id"), rs.getString("day"), rs.getString("time_slot"), rs.getString("subject_name"),
+            rs.getString("instructor_name"), rs.getString("room"), rs.getInt("semester_number"));
+}
+
+// Rebuilds every student's view from a single join over classes and allocations
+public void buildTimetables() {
+    TimetableView view = new TimetableView();
+    try (Statement stmt = createStatement()) {
+        ResultSet rs = stmt.executeQuery(TIMETABLE_QUERY);
+        while (rs.next()) {
+            ClassInfo info = view.classes.get(rs.getInt("id"));
+            if (info == null) {
+                info = readClassInfo(rs);
+                view.classes.put(info.classId, info);
+            }
+            String sid = rs.getString("student_id");
+            if (sid != null) {
+                view.students.computeIfAbsent(sid, k -> new StudentTimetable()).add(info);
+            }
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return;
+    }
+    timetableView = view;
+}
+
+private ClassInfo timetableClass(int classId) {
+    TimetableView view = timetableView;
+    ClassInfo info = view.classes.get(classId);
+    if (info != null) return info;
+    try (PreparedStatement pstmt = prepare(
+            "SELECT c.id, c.day, c.time_slot, c.room, c.semester_number, sub.subject_name, " +
+                    "COALESCE(i.name, 'Unassigned') AS instructor_name " +
+                    "FROM classes c JOIN subjects sub ON c.subject_id = sub.id " +
+                    "LEFT JOIN instructors i ON c.instructor_id = i.id WHERE c.id = ?")) {
+        pstmt.setInt(1, classId);
+        ResultSet rs = pstmt.executeQuery();
+        if (rs.next()) {
+            info = readClassInfo(rs);
+            view.classes.put(classId, info);
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return info;
+}
+
+// Classes for a student ordered by day and time slot; semesterNum -1 returns every semester
+public List<ClassInfo> getStudentTimetable(String studentId, int semesterNum) {
+    List<ClassInfo> classes = new ArrayList<>();
+    TimetableView view = timetableView;
+    StudentTimetable timetable = view.students.get(studentId);
+    if (timetable == null) return classes;
+    for (int classId : timetable.classIds()) {
+        ClassInfo info = view.classes.get(classId);
+        if (info != null && (semesterNum == -1 || info.semester == semesterNum)) classes.add(info);
+    }
+    classes.sort(TIMETABLE_ORDER);
+    return classes;
+}
+
+public void printStudentTimetable(String studentId, int semesterNum) {
+    List<ClassInfo> classes = getStudentTimetable(studentId, semesterNum);
+    System.out.println("=== Timetable for Student ID: " + studentId +
+            (semesterNum == -1 ? " (All Semesters)" : " (Semester " + semesterNum + ")") + " ===");
+    if (classes.isEmpty()) {
+        System.out.println("No classes allocated.");
+    }
+    String lastDay = null;
+    for (ClassInfo c : classes) {
+        if (!c.day.equals(lastDay)) {
+            System.out.println("\n" + c.day + ":");
+            lastDay = c.day;
+        }
+        System.out.println("  " + c.timeSlot + "\t" + c.subject + "\t" + c.instructor + "\tRoom " + c.room +
+                "\t(Class " + c.classId + ")");
+    }
+    System.out.println("=== End Timetable ===");
+}
+
+public void exportStudentTimetable(String studentId, int semesterNum, String path) {
+    List<String> lines = new ArrayList<>();
+    lines.add("Day,Time Slot,Subject,Instructor,Room,Semester,Class ID");
+    for (ClassInfo c : getStudentTimetable(studentId, semesterNum)) {
+        lines.add(String.join(",", csv(c.day), csv(c.timeSlot), csv(c.subject), csv(c.instructor), csv(c.room),
+                String.valueOf(c.semester), String.valueOf(c.classId)));
+    }
+    try {
+        java.nio.file.Files.write(java.nio.file.Paths.get(path), lines);
+        System.out.println("Timetable exported to " + path);
+    } catch (java.io.IOException e) {
+        e.printStackTrace();
+    }
+}
+
+private static String csv(String value) {
+    if (value == null) return "";
+    return value.contains(",") || value.contains("\"") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+}
+
+// Students holding two or more classes with overlapping times on the same semester and day
+public Map<String, List<ClassInfo>> findTimetableClashes() {
+    Map<String, List<ClassInfo>> clashes = new TreeMap<>();
+    TimetableView view = timetableView;
+    for (Map.Entry<String, StudentTimetable> entry : view.students.entrySet()) {
+        Map<String, List<ClassInfo>> byDay = new HashMap<>();
+        for (int classId : entry.getValue().classIds()) {
+            ClassInfo info = view.classes.get(classId);
+            if (info == null) continue;
+            byDay.computeIfAbsent(info.semester + "|" + dayIndex(info.day), k -> new ArrayList<>()).add(info);
+        }
+        for (List<ClassInfo> day : byDay.values()) {
+            if (day.size() < 2) continue;
+            day.sort(TIMETABLE_ORDER);
+            // A student has a handful of classes per day, so comparing every pair is cheap
+            boolean[] clashing = new boolean[day.size()];
+            for (int i = 0; i < day.size(); i++) {
+                for (int j = i + 1; j < day.size(); j++) {
+                    if (slotsOverlap(day.get(i), day.get(j))) clashing[i] = clashing[j] = true;
+                }
+            }
+            for (int i = 0; i < day.size(); i++) {
+                if (clashing[i]) clashes.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(day.get(i));
+            }
+        }
+    }
+    return clashes;
+}
+
+public void generateClashReport() {
+    Map<String, List<ClassInfo>> clashes = findTimetableClashes();
+    System.out.println("=== Timetable Clash Report (" + clashes.size() + " students) ===");
+    for (Map.Entry<String, List<ClassInfo>> entry : clashes.entrySet()) {
+        System.out.println("\nStudent ID: " + entry.getKey());
+        for (ClassInfo c : entry.getValue()) {
+            System.out.println("  Semester " + c.semester + "\t" + c.day + " " + c.timeSlot + "\t" + c.subject +
+                    "\tRoom " + c.room + "\t(Class " + c.classId + ")");
+        }
+    }
+    System.out.println("=== End Clash Report ===");
+}
+
+// Student search: in-memory token + trigram index over name and student_id, filtered by program.
+// Bulk-loaded with the other derived views and kept current by insertOrGetStudent.
+private static final int SEARCH_DEFAULT_LIMIT = 20;
+private volatile StudentSearchIndex studentIndex = new StudentSearchIndex();
+
+public static class StudentMatch {
+    public final String studentId;
+    public final String name;
+    public final String program;
+    public final int score;
+
+    StudentMatch(String studentId, String name, String program, int score) {
+        this.studentId = studentId;
+        this.name = name;
+        this.program = program;
+        this.score = score;
+    }
+}
+
+private static class IntList {
+    int[] values = new int[4];
+    int size;
+
+    void add(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+}
+
+// Documents are students by ordinal; tokens are distinct lower-cased name words and ids, each with postings.
+// A query word resolves to tokens in tiers of falling score (exact, prefix, substring, edit distance), and the
+// last word stops as soon as `limit` students outscore anything a later tier could add. Broad words such as an
+// id prefix shared by every student therefore touch about `limit` postings instead of every matching token.
+private static class StudentSearchIndex {
+    private static final int MAX_EXPANSIONS = 2000; // prefix or substring tokens considered per query word
+    private static final int[] TIER_MAX_SCORE = {100, 80, 60, 40}; // exact, prefix, substring, typo
+    private static final int FREQUENT_TRIGRAM = 5000; // trigrams in more tokens than this are skipped for typo matching
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<String> docIds = new ArrayList<>();
+    private final List<String> docNames = new ArrayList<>();
+    private final List<String> docPrograms = new ArrayList<>();
+    private final Map<String, Integer> docByStudentId = new HashMap<>();
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+    private final List<IntList> tokenDocs = new ArrayList<>();
+    private final TreeMap<String, Integer> sortedTokens = new TreeMap<>();
+    private final Map<String, IntList> trigramTokens = new HashMap<>();
+
+    // Mirrors the students upsert: an existing row only gains a program when it had none
+    void add(String studentId, String name, String program) {
+        if (studentId == null) return;
+        program = program == null ? "" : program;
+        lock.writeLock().lock();
+        try {
+            Integer doc = docByStudentId.get(studentId);
+            if (doc != null) {
+                if (docPrograms.get(doc).isEmpty()) docPrograms.set(doc, program);
+                return;
+            }
+            doc = docIds.size();
+            docIds.add(studentId);
+            docNames.add(name == null ? "" : name);
+            docPrograms.add(program);
+            docByStudentId.put(studentId, doc);
+            Set<String> docTokens = new LinkedHashSet<>();
+            addTokens(docTokens, studentId);
+            addTokens(docTokens, name);
+            for (String token : docTokens) {
+                tokenDocs.get(tokenId(token)).add(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Whitespace words plus their alphanumeric parts, so "G5-0000123" is found by "g5-00001" and "0000123"
+    private static void addTokens(Set<String> out, String text) {
+        if (text == null) return;
+        for (String word : text.toLowerCase().trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            out.add(word);
+            for (String part : word.split("[^\\p{Alnum}]+")) {
+                if (!part.isEmpty()) out.add(part);
+            }
+        }
+    }
+
+    private int tokenId(String token) {
+        Integer id = tokenIds.get(token);
+        if (id != null) return id;
+        id = tokens.size();
+        tokens.add(token);
+        tokenDocs.add(new IntList());
+        tokenIds.put(token, id);
+        sortedTokens.put(token, id);
+        for (String gram : trigrams(token)) {
+            trigramTokens.computeIfAbsent(gram, k -> new IntList()).add(id);
+        }
+        return id;
+    }
+
+    // Padded so short tokens and word boundaries still produce trigrams
+    private static Set<String> trigrams(String token) {
+        String padded = "^" + token + "$";
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every query word must match; a student's score is the sum of its best match per word.
+    // Scores live in a flat array indexed by document, and only the top `limit` are ever sorted.
+    List<StudentMatch> search(String query, String program, int limit) {
+        List<StudentMatch> matches = new ArrayList<>();
+        if (query == null || query.trim().isEmpty() || limit <= 0) return matches;
+        String[] words = query.toLowerCase().trim().split("\\s+");
+        boolean anyProgram = program == null || program.isEmpty();
+        lock.readLock().lock();
+        try {
+            // Scores add up in any order, so the broadest word goes last where the tier cut-off can stop it early
+            Arrays.sort(words, Comparator.comparingInt(this::exactPostings));
+            int[] scores = new int[docIds.size()];
+            IntList candidates = null;
+            for (int w = 0; w < words.length; w++) {
+                String word = words[w];
+                int[] wordScores = candidates == null ? scores : new int[scores.length];
+                IntList hits = new IntList();
+                int priorMax = 0;
+                for (int i = 0; candidates != null && i < candidates.size; i++) {
+                    priorMax = Math.max(priorMax, scores[candidates.values[i]]);
+                }
+                // Later words filter, so only the last word may stop once the top `limit` cannot change
+                boolean last = w == words.length - 1;
+                Set<Integer> matched = new HashSet<>();
+                tiers:
+                for (int tier = 0; tier < TIER_MAX_SCORE.length; tier++) {
+                    List<Map.Entry<Integer, Integer>> tierMatches = new ArrayList<>(matchTier(word, tier, matched).entrySet());
+                    tierMatches.sort((x, y) -> Integer.compare(y.getValue(), x.getValue()));
+                    for (int m = 0; m < tierMatches.size(); m++) {
+                        IntList docs = tokenDocs.get(tierMatches.get(m).getKey());
+                        int score = tierMatches.get(m).getValue();
+                        int next = m + 1 < tierMatches.size() ? tierMatches.get(m + 1).getValue()
+                                : tier + 1 < TIER_MAX_SCORE.length ? TIER_MAX_SCORE[tier + 1] : 0;
+                        // A lone word's scores are final and postings are in load order, so on the last token of
+                        // a score level the rest of the posting is skipped once `limit` students rank ahead of it
+                        int ranked = -1;
+                        if (words.length == 1 && next < score) {
+                            ranked = 0;
+                            for (int i = 0; i < hits.size && ranked < limit; i++) {
+                                if (wordScores[hits.values[i]] > score) ranked++;
+                            }
+                        }
+                        for (int i = 0; i < docs.size && ranked < limit; i++) {
+                            int doc = docs.values[i];
+                            if (candidates != null && scores[doc] == 0) continue;
+                            if (!anyProgram && !program.equalsIgnoreCase(docPrograms.get(doc))) continue;
+                            if (wordScores[doc] == 0) {
+                                hits.add(doc);
+                                if (ranked >= 0) ranked++;
+                            }
+                            if (score > wordScores[doc]) wordScores[doc] = score;
+                        }
+                        // Between score levels: stop when `limit` students beat the best score still to come
+                        if (!last || next == score || next == 0) continue;
+                        int above = 0;
+                        for (int i = 0; i < hits.size && above < limit; i++) {
+                            int doc = hits.values[i];
+                            if (wordScores[doc] + (candidates == null ? 0 : scores[doc]) > priorMax + next) above++;
+                        }
+                        if (above == limit) break tiers;
+                    }
+                }
+                if (candidates != null) {
+                    for (int i = 0; i < hits.size; i++) {
+                        wordScores[hits.values[i]] += scores[hits.values[i]];
+                    }
+                    scores = wordScores;
+                }
+                candidates = hits;
+                if (candidates.size == 0) break;
+            }
+
+            // Top `limit` by score via a histogram of the small score range; ties at the cut-off go to the
+            // earliest loaded students, so the answer does not depend on the order matches were found in
+            int[] histogram = new int[100 * words.length + 1];
+            for (int i = 0; i < candidates.size; i++) histogram[scores[candidates.values[i]]]++;
+            int cutoff = histogram.length - 1;
+            for (int taken = 0; cutoff > 0 && taken + histogram[cutoff] < limit; cutoff--) taken += histogram[cutoff];
+            int[] finalScores = scores;
+            List<Integer> top = new ArrayList<>();
+            for (int i = 0; i < candidates.size; i++) {
+                if (scores[candidates.values[i]] > cutoff) top.add(candidates.values[i]);
+            }
+            int[] ties = new int[limit - top.size()];
+            int tieCount = 0;
+            for (int i = 0; i < candidates.size && ties.length > 0; i++) {
+                int doc = candidates.values[i];
+                if (scores[doc] != cutoff || (tieCount == ties.length && doc > ties[tieCount - 1])) continue;
+                int pos = tieCount == ties.length ? tieCount - 1 : tieCount++;
+                for (; pos > 0 && ties[pos - 1] > doc; pos--) ties[pos] = ties[pos - 1];
+                ties[pos] = doc;
+            }
+            for (int i = 0; i < tieCount; i++) top.add(ties[i]);
+            top.sort((x, y) -> finalScores[x] != finalScores[y]
+                    ? Integer.compare(finalScores[y], finalScores[x])
+                    : docNames.get(x).compareTo(docNames.get(y)));
+            for (int doc : top) {
+                matches.add(new StudentMatch(docIds.get(doc), docNames.get(doc), docPrograms.get(doc), finalScores[doc]));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return matches;
+    }
+
+    private int exactPostings(String word) {
+        Integer token = tokenIds.get(word);
+        return token == null ? 0 : tokenDocs.get(token).size;
+    }
+
+    // Token id -> score for one tier (exact 100, prefix 70-80, substring 60, one or two typos 40-30),
+    // skipping tokens an earlier tier already matched and recording the new ones in matched
+    private Map<Integer, Integer> matchTier(String word, int tier, Set<Integer> matched) {
+        Map<Integer, Integer> found = new HashMap<>();
+        if (tier == 0) {
+            Integer exact = tokenIds.get(word);
+            if (exact != null) found.put(exact, 100);
+        } else if (tier == 1) {
+            int prefixCount = 0;
+            for (Map.Entry<String, Integer> entry : sortedTokens.subMap(word, false, word + Character.MAX_VALUE, false).entrySet()) {
+                if (++prefixCount > MAX_EXPANSIONS) break;
+                found.put(entry.getValue(), 80 - Math.min(10, entry.getKey().length() - word.length()));
+            }
+        } else if (word.length() < 3) {
+            return found;
+        } else if (tier == 2) {
+            // Substring: every inner trigram must occur, so verify the rarest trigram's tokens only
+            IntList rarest = null;
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                IntList candidates = trigramTokens.get(word.substring(i, i + 3));
+                if (candidates == null) {
+                    rarest = new IntList();
+                    break;
+                }
+                if (rarest == null || candidates.size < rarest.size) rarest = candidates;
+            }
+            for (int i = 0; rarest != null && i < rarest.size && found.size() < MAX_EXPANSIONS; i++) {
+                int token = rarest.values[i];
+                if (!matched.contains(token) && tokens.get(token).contains(word)) found.put(token, 60);
+            }
+        } else if (word.chars().allMatch(Character::isLetter)) {
+            // Typos (names only; ids are matched by prefix/substring): an edit destroys at most three trigrams,
+            // so shortlist tokens sharing enough of them
+            int maxEdits = word.length() <= 4 ? 1 : 2;
+            Map<Integer, Integer> overlap = new HashMap<>();
+            int counted = 0;
+            for (String gram : trigrams(word)) {
+                IntList candidates = trigramTokens.get(gram);
+                if (candidates == null || candidates.size > FREQUENT_TRIGRAM) continue;
+                counted++;
+                for (int i = 0; i < candidates.size; i++) {
+                    overlap.merge(candidates.values[i], 1, Integer::sum);
+                }
+            }
+            int required = Math.max(1, counted - 3 * maxEdits);
+            for (Map.Entry<Integer, Integer> entry : overlap.entrySet()) {
+                if (entry.getValue() < required || matched.contains(entry.getKey())) continue;
+                int distance = editDistance(word, tokens.get(entry.getKey()), maxEdits);
+                if (distance <= maxEdits) found.put(entry.getKey(), 50 - 10 * distance);
+            }
+        }
+        matched.addAll(found.keySet());
+        return found;
+    }
+
+    // Optimal string alignment distance (adjacent swaps count once); returns max + 1 once it is exceeded
+    private static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) return max + 1;
+        int[] prevPrev = new int[b.length() + 1];
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    cur[j] = Math.min(cur[j], prevPrev[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] recycled = prevPrev;
+            prevPrev = prev;
+            prev = cur;
+            cur = recycled;
+        }
+        return prev[b.length()];
+    }
+}
+
+// Streams every student into a fresh index, then swaps it in so searches never see a partial build
+public void buildStudentIndex() {
+    StudentSearchIndex index = new StudentSearchIndex();
+    try (PreparedStatement pstmt = prepare("SELECT student_id, name, program FROM students",
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        pstmt.setFetchSize(backend.streamingFetchSize);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            index.add(rs.getString("student_id"), rs.getString("name"), rs.getString("program"));
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    studentIndex = index;
+}
+
+public List<StudentMatch> searchStudents(String query, String program, int limit) {
+    return studentIndex.search(query, program, limit);
+}
+
+public void printStudentSearch(String query, String program) {
+    long start = System.nanoTime();
+    List<StudentMatch> matches = searchStudents(query, program, SEARCH_DEFAULT_LIMIT);
+    double millis = (System.nanoTime() - start) / 1_000_000.0;
+    System.out.println("=== Student Search: \"" + query + "\"" +
+            (program == null || program.isEmpty() ? "" : " in " + program) + " ===");
+    System.out.println("Student ID\tName\t\tProgram\tScore");
+    for (StudentMatch match : matches) {
+        System.out.println(match.studentId + "\t" + match.name + "\t\t" + match.program + "\t" + match.score);
+    }
+    System.out.println(matches.size() + " match(es) from " + studentIndex.size() + " students in " + new DecimalFormat("#.###").format(millis) + " ms");
+}
+
+// Hot/cold archival: graduated or inactive students' results, SUPs and payments move to *_archive tables
+// in batched transactions, checkpointed in archive_runs so an interrupted run resumes where it stopped.
+// Reads for archived students go through the *_all union views; everyone else stays on the hot tables.
+public static final String STATUS_ACTIVE = "ACTIVE";
+public static final String STATUS_GRADUATED = "GRADUATED";
+public static final String STATUS_INACTIVE = "INACTIVE";
+private static final List<String> STUDENT_STATUSES = List.of(STATUS_ACTIVE, STATUS_GRADUATED, STATUS_INACTIVE);
+private static final int ARCHIVE_BATCH_SIZE = 200;
+
+private final Set<String> archivedStudents = ConcurrentHashMap.newKeySet();
+
+private void createArchiveViews() throws SQLException {
+    try (Statement stmt = createStatement()) {
+        for (String[] table : ARCHIVED_TABLES) {
+            stmt.execute("CREATE OR REPLACE VIEW " + table[0] + "_all AS " +
+                    "SELECT " + table[1] + " FROM " + table[0] + " UNION ALL " +
+                    "SELECT " + table[1] + " FROM " + table[0] + "_archive");
+        }
+    }
+}
+
+private void loadArchivedStudents() {
+    archivedStudents.clear();
+    try (PreparedStatement pstmt = prepare("SELECT student_id FROM students WHERE archived_at IS NOT NULL")) {
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            archivedStudents.add(rs.getString("student_id"));
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Table to read a student's rows from: the union view once they are archived, otherwise the hot table
+private String tableFor(String table, String studentId) {
+    return archivedStudents.contains(studentId) ? table + "_all" : table;
+}
+
+public boolean isArchived(String studentId) {
+    return archivedStudents.contains(studentId);
+}
+
+public void setStudentStatus(String studentId, String status) {
+    if (!STUDENT_STATUSES.contains(status)) {
+        System.out.println("Invalid status '" + status + "'. Use one of " + String.join(", ", STUDENT_STATUSES) + ".");
+        return;
+    }
+    // Archival is one-way: an archived student's rows live in the *_archive tables and writes stay refused
+    if (archivedStudents.contains(studentId)) {
+        System.out.println("Student " + studentId + " is archived; their status can no longer be changed.");
+        return;
+    }
+    try {
+        if (students.setStatus(studentId, status) == 0) {
+            System.out.println("Student not found.");
+        } else {
+            System.out.println("Student " + studentId + " marked " + status + ".");
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+public int graduateCohort(String program, int finalSemester) {
+    try {
+        int graduated = students.graduateCohort(program, finalSemester);
+        System.out.println(graduated + " student(s) in " + program + " marked " + STATUS_GRADUATED + ".");
+        return graduated;
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return 0;
+}
+
+// Moves every eligible student in batches of batchSize; returns the number of students archived by this call
+public int archiveInactiveStudents(int batchSize) {
+    int archivedNow = 0;
+    try {
+        int runId;
+        String checkpoint;
+        try (PreparedStatement pstmt = prepare(
+                "SELECT run_id, last_student_id FROM archive_runs WHERE status = 'RUNNING' ORDER BY run_id DESC LIMIT 1")) {
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                runId = rs.getInt("run_id");
+                checkpoint = rs.getString("last_student_id");
+                System.out.println("Resuming archival run " + runId + " after " + checkpoint);
+            } else {
+                runId = -1;
+                checkpoint = "";
+            }
+        }
+        if (runId == -1) {
+            try (PreparedStatement insert = prepare(
+                    "INSERT INTO archive_runs (started_at, status, last_student_id, students_archived, rows_moved) " +
+                            "VALUES (?, 'RUNNING', '', 0, 0)", Statement.RETURN_GENERATED_KEYS)) {
+                insert.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+                insert.executeUpdate();
+                ResultSet keys = insert.getGeneratedKeys();
+                keys.next();
+                runId = keys.getInt(1);
+            }
+        }
+
+        while (true) {
+            List<String> batch = new ArrayList<>();
+            try (PreparedStatement pstmt = prepare(
+                    "SELECT student_id FROM students WHERE status IN ('" + STATUS_GRADUATED + "', '" + STATUS_INACTIVE + "') " +
+                            "AND archived_at IS NULL AND student_id > ? ORDER BY student_id LIMIT ?")) {
+                bind(pstmt, checkpoint == null ? "" : checkpoint, batchSize);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    batch.add(rs.getString("student_id"));
+                }
+            }
+            if (batch.isEmpty()) break;
+            // Flag the batch first so writes arriving during the move are refused instead of landing in the
+            // hot tables after their rows were copied; a rolled-back batch is unflagged again
+            archivedStudents.addAll(batch);
+            int moved;
+            try {
+                moved = archiveBatch(runId, batch);
+            } catch (SQLException e) {
+                archivedStudents.removeAll(batch);
+                throw e;
+            }
+            archivedNow += batch.size();
+            checkpoint = batch.get(batch.size() - 1);
+            System.out.println("Archived " + archivedNow + " student(s), " + moved + " row(s) in last batch (through " + checkpoint + ")");
+        }
+
+        try (PreparedStatement pstmt = prepare(
+                "UPDATE archive_runs SET status = 'DONE', finished_at = ? WHERE run_id = ?")) {
+            bind(pstmt, Timestamp.valueOf(LocalDateTime.now()), runId);
+            pstmt.executeUpdate();
+        }
+        System.out.println("Archival run " + runId + " complete: " + archivedNow + " student(s) archived.");
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+    return archivedNow;
+}
+
+// One transaction per batch: copy, delete, flag the students and advance the checkpoint together
+private int archiveBatch(int runId, List<String> batch) throws SQLException {
+    String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+    Object[] ids = batch.toArray();
+    int[] moved = {0};
+    inTransaction(() -> {
+        for (String[] table : ARCHIVED_TABLES) {
+            try (PreparedStatement copy = prepare(
+                    "INSERT INTO " + table[0] + "_archive (" + table[1] + ") " +
+                            "SELECT " + table[1] + " FROM " + table[0] + " WHERE student_id IN (" + placeholders + ")");
+                 PreparedStatement delete = prepare(
+                         "DELETE FROM " + table[0] + " WHERE student_id IN (" + placeholders + ")")) {
+                bind(copy, ids);
+                int copied = copy.executeUpdate();
+                bind(delete, ids);
+                int deleted = delete.executeUpdate();
+                // A row written between the copy and the delete would be lost, so the batch rolls back instead
+                if (copied != deleted) {
+                    throw new SQLException("Archival of " + table[0] + " copied " + copied + " row(s) but deleted " +
+                            deleted + "; batch through " + batch.get(batch.size() - 1) + " rolled back");
+                }
+                moved[0] += copied;
+            }
+        }
+        try (PreparedStatement flag = prepare(
+                "UPDATE students SET archived_at = ? WHERE student_id IN (" + placeholders + ")")) {
+            flag.setDate(1, java.sql.Date.valueOf(LocalDate.now()));
+            for (int i = 0; i < ids.length; i++) {
+                flag.setObject(i + 2, ids[i]);
+            }
+            flag.executeUpdate();
+        }
+        try (PreparedStatement progress = prepare(
+                "UPDATE archive_runs SET last_student_id = ?, students_archived = students_archived + ?, " +
+                        "rows_moved = rows_moved + ? WHERE run_id = ?")) {
+            bind(progress, batch.get(batch.size() - 1), batch.size(), moved[0], runId);
+            progress.executeUpdate();
+        }
+    });
+    return moved[0];
+}
+
+public void printArchiveStatus() {
+    try (Statement stmt = createStatement()) {
+        System.out.println("=== Archive Status ===");
+        for (String[] table : ARCHIVED_TABLES) {
+            ResultSet rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM " + table[0] + "), " +
+                    "(SELECT COUNT(*) FROM " + table[0] + "_archive)");
+            rs.next();
+            System.out.println(table[0] + ": " + rs.getInt(1) + " hot, " + rs.getInt(2) + " archived");
+        }
+        System.out.println("Archived students: " + archivedStudents.size());
+        ResultSet runs = stmt.executeQuery(
+                "SELECT run_id, started_at, finished_at, status, students_archived, rows_moved " +
+                        "FROM archive_runs ORDER BY run_id DESC LIMIT 5");
+        System.out.println("Run\tStatus\tStudents\tRows\tStarted\t\t\tFinished");
+        while (runs.next()) {
+            System.out.println(runs.getInt("run_id") + "\t" + runs.getString("status") + "\t" +
+                    runs.getInt("students_archived") + "\t\t" + runs.getInt("rows_moved") + "\t" +
+                    runs.getTimestamp("started_at") + "\t" + runs.getTimestamp("finished_at"));
+        }
+        System.out.println("=== End Archive Status ===");
+    } catch (SQLException e) {
+        sqlFailed(e);
+    }
+}
+
+// Grade moderation: a mark transform applied to a whole subject/semester with set-based UPDATEs in one
+// transaction, logged with before/after values for undo, then GPAs recomputed in parallel in memory.
+private static final int MODERATION_CHUNK_SIZE = 2000;
+
+// Piecewise linear through (from, to) points, extended past the ends by the outer segments; a linear
+// scale/shift is the two-point case. Output is clamped to 0-100 and rounded to one decimal place.
+public static class MarkTransform {
+    final double[] from;
+    final double[] to;
+    final String description;
+
+    private MarkTransform(double[] from, double[] to, String description) {
+        if (from.length < 2 || from.length != to.length) {
+            throw new IllegalArgumentException("A transform needs at least two from:to points");
+        }
+        for (int i = 1; i < from.length; i++) {
+            if (from[i] <= from[i - 1]) throw new IllegalArgumentException("Points must be in increasing order of marks");
+        }
+        this.from = from;
+        this.to = to;
+        this.description = description;
+    }
+
+    public static MarkTransform linear(double scale, double shift) {
+        return new MarkTransform(new double[]{0, 100}, new double[]{shift, 100 * scale + shift},
+                "linear x" + scale + (shift < 0 ? " " : " +") + shift);
+    }
+
+    public static MarkTransform piecewise(double[] from, double[] to) {
+        StringBuilder description = new StringBuilder("piecewise");
+        for (int i = 0; i < from.length && i < to.length; i++) {
+            description.append(' ').append(from[i]).append(':').append(to[i]);
+        }
+        return new MarkTransform(from.clone(), to.clone(), description.toString());
+    }
+
+    // "linear <scale> <shift>" or "piecewise <from>:<to> <from>:<to> ..."
+    public static MarkTransform parse(String spec) {
+        String[] parts = spec.trim().split("\\s+");
+        if (parts[0].equalsIgnoreCase("linear") && parts.length == 3) {
+            return linear(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        }
+        if (parts[0].equalsIgnoreCase("piecewise")) {
+            double[] from = new double[parts.length - 1];
+            double[] to = new double[parts.length - 1];
+            for (int i = 1; i < parts.length; i++) {
+                String[] point = parts[i].split(":");
+                if (point.length != 2) throw new IllegalArgumentException("Bad point: " + parts[i]);
+                from[i - 1] = Double.parseDouble(point[0]);
+                to[i - 1] = Double.parseDouble(point[1]);
+            }
+            return piecewise(from, to);
+        }
+        throw new IllegalArgumentException("Expected 'linear <scale> <shift>' or 'piecewise <from>:<to> ...'");
+    }
+
+    private String segmentSql(String column, int i) {
+        double slope = (to[i + 1] - to[i]) / (from[i + 1] - from[i]);
+        return "(" + to[i] + " + (" + column + " - " + from[i] + ") * " + slope + ")";
+    }
+
+    // New marks for the given column as a SQL expression
+    public String toSql(String column) {
+        StringBuilder expr = new StringBuilder();
+        if (from.length == 2) {
+            expr.append(segmentSql(column, 0));
+        } else {
+            expr.append("CASE");
+            for (int i = 0; i < from.length - 2; i++) {
+                expr.append(" WHEN ").append(column).append(" < ").append(from[i + 1])
+                        .append(" THEN ").append(segmentSql(column, i));
+            }
+            expr.append(" ELSE ").append(segmentSql(column, from.length - 2)).append(" END");
+        }
+        return "ROUND(LEAST(100, GREATEST(0, " + expr + ")), 1)";
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
+
+public static class GpaChange {
+    public final String studentId;
+    public final double before;
+    public final double after;
+
+    GpaChange(String studentId, double before, double after) {
+        this.studentId = studentId;
+        this.before = before;
+        this.after = after;
+    }
+}
+
+// Applies the transform to every hot result of the subject in that semester; returns the moderation id or -1
+public int moderateSubject(int semesterNum, String courseName, String subjectName, MarkTransform transform) {
+    long start = System.nanoTime();
+    int semId = findSemesterId(semesterNum);
+    int subId = findSubjectId(subjectName, courseName);
+    if (semId == -1 || subId == -1) {
+        System.out.println("Error: " + (semId == -1 ? "semester " + semesterNum : courseName + " - " + subjectName) +
+                " does not exist; nothing moderated.");
+        return -1;
+    }
+    String newMarks = transform.toSql("marks");
+    int[] moderation = {-1, 0}; // id, rows
+    try {
+        if (queryInt("SELECT COUNT(*) FROM results WHERE subject_id = ? AND semester_id = ?", subId, semId) == 0) {
+            System.out.println("Error: " + courseName + " - " + subjectName + " has no results in semester " +
+                    semesterNum + "; nothing moderated.");
+            return -1;
+        }
+        inTransaction(() -> {
+            try (PreparedStatement log = prepare(
+                    "INSERT INTO moderation_log (subject_id, semester_id, transform, applied_at, status, rows_changed) " +
+                            "VALUES (?, ?, ?, ?, 'APPLIED', 0)", Statement.RETURN_GENERATED_KEYS)) {
+                bind(log, subId, semId, transform.toString(), Timestamp.valueOf(LocalDateTime.now()));
+                log.executeUpdate();
+                ResultSet keys = log.getGeneratedKeys();
+                keys.next();
+                moderation[0] = keys.getInt(1);
+            }
+            try (PreparedStatement snapshot = prepare(
+                    "INSERT INTO moderation_changes (moderation_id, result_id, student_id, old_marks, old_grade, new_marks, new_grade) " +
+                            "SELECT ?, id, student_id, marks, grade, " + newMarks + ", " + gradeSql(newMarks) + " " +
+                            "FROM results WHERE subject_id = ? AND semester_id = ?")) {
+                bind(snapshot, moderation[0], subId, semId);
+                moderation[1] = snapshot.executeUpdate();
+            }
+            // grade is assigned first and derived from the transformed marks, so MySQL's left-to-right SET
+            // evaluation and standard SQL agree; the id filter keeps the update to the snapshotted rows
+            try (PreparedStatement update = prepare(
+                    "UPDATE results SET grade = " + gradeSql(newMarks) + ", marks = " + newMarks + " " +
+                            "WHERE id IN (SELECT result_id FROM moderation_changes WHERE moderation_id = ?)")) {
+                bind(update, moderation[0]);
+                update.executeUpdate();
+            }
+            try (PreparedStatement count = prepare("UPDATE moderation_log SET rows_changed = ? WHERE moderation_id = ?")) {
+                bind(count, moderation[1], moderation[0]);
+                count.executeUpdate();
+            }
+        });
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return -1;
+    }
+    List<GpaChange> changes = recomputeModeratedGpas(moderation[0], semId, semesterNum, false, Collections.emptySet());
+    printModerationSummary("Moderation " + moderation[0] + " (" + transform + ")", moderation[1], changes, start);
+    return moderation[0];
+}
+
+// Restores the logged marks and grades; only the latest applied moderation of a subject/semester can be undone.
+// Results changed since the moderation (or no longer in the hot table) keep their current marks and are reported.
+public boolean undoModeration(int moderationId) {
+    long start = System.nanoTime();
+    int semId;
+    int semesterNum;
+    try (PreparedStatement pstmt = prepare(
+            "SELECT m.semester_id, sem.semester_number, m.status, " +
+                    "(SELECT COUNT(*) FROM moderation_log later WHERE later.subject_id = m.subject_id " +
+                    "AND later.semester_id = m.semester_id AND later.status = 'APPLIED' " +
+                    "AND later.moderation_id > m.moderation_id) AS later_count " +
+                    "FROM moderation_log m JOIN semesters sem ON m.semester_id = sem.id WHERE m.moderation_id = ?")) {
+        bind(pstmt, moderationId);
+        ResultSet rs = pstmt.executeQuery();
+        if (!rs.next()) {
+            System.out.println("Moderation " + moderationId + " not found.");
+            return false;
+        }
+        if (!"APPLIED".equals(rs.getString("status"))) {
+            System.out.println("Moderation " + moderationId + " is already " + rs.getString("status") + ".");
+            return false;
+        }
+        if (rs.getInt("later_count") > 0) {
+            System.out.println("Undo the later moderations of this subject first.");
+            return false;
+        }
+        semId = rs.getInt("semester_id");
+        semesterNum = rs.getInt("semester_number");
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return false;
+    }
+    int[] rows = {0};
+    Set<Integer> skipped = new HashSet<>();
+    List<String> skippedStudents = new ArrayList<>();
+    try {
+        inTransaction(() -> {
+            try (PreparedStatement changed = prepare(
+                    "SELECT mc.result_id, mc.student_id FROM moderation_changes mc " +
+                            "LEFT JOIN results r ON r.id = mc.result_id " +
+                            "WHERE mc.moderation_id = ? AND (r.id IS NULL OR r.marks <> mc.new_marks) ORDER BY mc.student_id")) {
+                bind(changed, moderationId);
+                ResultSet rs = changed.executeQuery();
+                while (rs.next()) {
+                    skipped.add(rs.getInt("result_id"));
+                    skippedStudents.add(rs.getString("student_id"));
+                }
+            }
+            try (PreparedStatement restore = prepare(
+                    "UPDATE results SET " +
+                            "marks = (SELECT mc.old_marks FROM moderation_changes mc WHERE mc.moderation_id = ? AND mc.result_id = results.id), " +
+                            "grade = (SELECT mc.old_grade FROM moderation_changes mc WHERE mc.moderation_id = ? AND mc.result_id = results.id) " +
+                            "WHERE id IN (SELECT result_id FROM moderation_changes WHERE moderation_id = ?) " +
+                            "AND marks = (SELECT mc.new_marks FROM moderation_changes mc WHERE mc.moderation_id = ? AND mc.result_id = results.id)")) {
+                bind(restore, moderationId, moderationId, moderationId, moderationId);
+                rows[0] = restore.executeUpdate();
+            }
+            try (PreparedStatement log = prepare(
+                    "UPDATE moderation_log SET status = 'UNDONE', undone_at = ? WHERE moderation_id = ?")) {
+                bind(log, Timestamp.valueOf(LocalDateTime.now()), moderationId);
+                log.executeUpdate();
+            }
+        });
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return false;
+    }
+    List<GpaChange> changes = recomputeModeratedGpas(moderationId, semId, semesterNum, true, skipped);
+    printModerationSummary("Undo of moderation " + moderationId, rows[0], changes, start);
+    if (!skippedStudents.isEmpty()) {
+        System.out.println(skippedStudents.size() + " result(s) changed since the moderation were left as they are: " +
+                String.join(", ", skippedStudents.subList(0, Math.min(10, skippedStudents.size()))) +
+                (skippedStudents.size() > 10 ? ", ..." : ""));
+    }
+    return true;
+}
+
+// Loads the affected students' semester marks in one query, then recomputes before/after GPAs in parallel
+// chunks and moves each student within their cohort sketch; unchanged holds result ids the operation left alone
+private List<GpaChange> recomputeModeratedGpas(int moderationId, int semId, int semesterNum, boolean undo,
+                                               Set<Integer> unchanged) {
+    Map<String, Map<Integer, Double>> marksByStudent = new HashMap<>();
+    Map<String, String> programs = new HashMap<>();
+    Map<Integer, Double> priorMarks = new HashMap<>();
+    try (PreparedStatement current = prepare(
+            "SELECT r.id, r.student_id, r.marks, s.program FROM results r JOIN students s ON r.student_id = s.student_id " +
+                    "WHERE r.semester_id = ? AND r.student_id IN " +
+                    "(SELECT student_id FROM moderation_changes WHERE moderation_id = ?)");
+         PreparedStatement prior = prepare(
+                 "SELECT result_id, old_marks, new_marks FROM moderation_changes WHERE moderation_id = ?")) {
+        bind(current, semId, moderationId);
+        ResultSet rs = current.executeQuery();
+        while (rs.next()) {
+            String sid = rs.getString("student_id");
+            marksByStudent.computeIfAbsent(sid, k -> new HashMap<>()).put(rs.getInt("id"), rs.getDouble("marks"));
+            programs.put(sid, rs.getString("program"));
+        }
+        bind(prior, moderationId);
+        rs = prior.executeQuery();
+        while (rs.next()) {
+            if (unchanged.contains(rs.getInt("result_id"))) continue;
+            priorMarks.put(rs.getInt("result_id"), rs.getDouble(undo ? "new_marks" : "old_marks"));
+        }
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return Collections.emptyList();
+    }
+
+    List<String> affected = new ArrayList<>(marksByStudent.keySet());
+    List<Callable<List<GpaChange>>> chunks = new ArrayList<>();
+    for (int from = 0; from < affected.size(); from += MODERATION_CHUNK_SIZE) {
+        List<String> chunk = affected.subList(from, Math.min(from + MODERATION_CHUNK_SIZE, affected.size()));
+        chunks.add(() -> {
+            List<GpaChange> changed = new ArrayList<>();
+            for (String sid : chunk) {
+                List<Double> after = new ArrayList<>();
+                List<Double> before = new ArrayList<>();
+                for (Map.Entry<Integer, Double> result : marksByStudent.get(sid).entrySet()) {
+                    after.add(result.getValue());
+                    before.add(priorMarks.getOrDefault(result.getKey(), result.getValue()));
+                }
+                double oldGpa = gpaOf(before);
+                double newGpa = gpaOf(after);
+                if (oldGpa != newGpa) {
+                    GpaSketch sketch = cohortSketches.computeIfAbsent(cohortKey(programs.get(sid), semesterNum),
+                            k -> new GpaSketch());
+                    sketch.remove(oldGpa);
+                    sketch.add(newGpa);
+                    changed.add(new GpaChange(sid, oldGpa, newGpa));
+                }
+            }
+            return changed;
+        });
+    }
+    List<GpaChange> changes = new ArrayList<>();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    try {
+        for (Future<List<GpaChange>> f : pool.invokeAll(chunks)) {
+            changes.addAll(f.get());
         }
-    } catch (SQLException e) {
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
         e.printStackTrace();
+    } finally {
+        pool.shutdown();
     }
+    changes.sort(Comparator.comparing((GpaChange c) -> c.studentId));
+    return changes;
 }
 
-// Set fee structure
-public void setFeeStructure(String program, double amount, int semester, String dueDateStr) {
-    try {
-        java.sql.Date dueDate = java.sql.Date.valueOf(dueDateStr);
-        PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO fee_structure (program, fee_amount, semester, due_date) VALUES (?, ?, ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE fee_amount = ?, due_date = ?");
-        pstmt.setString(1, program);
-        pstmt.setDouble(2, amount);
-        pstmt.setInt(3, semester);
-        pstmt.setDate(4, dueDate);
-        pstmt.setDouble(5, amount);
-        pstmt.setDate(6, dueDate);
-        pstmt.executeUpdate();
-        System.out.println("Fee structure updated for " + program + " semester " + semester);
-    } catch (SQLException e) {
-        e.printStackTrace();
+private void printModerationSummary(String title, int rows, List<GpaChange> changes, long startNanos) {
+    DecimalFormat df = new DecimalFormat("#.##");
+    double delta = 0;
+    for (GpaChange change : changes) delta += change.after - change.before;
+    System.out.println("=== " + title + " ===");
+    System.out.println(rows + " result(s) updated, " + changes.size() + " semester GPA(s) changed" +
+            (changes.isEmpty() ? "" : ", mean change " + df.format(delta / changes.size())) +
+            " in " + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+    for (GpaChange change : changes.subList(0, Math.min(10, changes.size()))) {
+        System.out.println("  " + change.studentId + "\t" + df.format(change.before) + " -> " + df.format(change.after));
     }
+    if (changes.size() > 10) System.out.println("  ... " + (changes.size() - 10) + " more");
 }
 
-// Record student payment
-public void recordPayment(String studentId, int semester, double amount, String receiptNo) {
-    try {
-        java.sql.Date payDate = new java.sql.Date(new java.util.Date().getTime());
-        PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO student_payments (student_id, semester_number, amount_paid, payment_date, receipt_no) " +
-                        "VALUES (?, ?, ?, ?, ?)");
-        pstmt.setString(1, studentId);
-        pstmt.setInt(2, semester);
-        pstmt.setDouble(3, amount);
-        pstmt.setDate(4, payDate);
-        pstmt.setString(5, receiptNo);
-        pstmt.executeUpdate();
-        System.out.println("Payment recorded. Receipt: " + receiptNo);
-        // Simulate receipt (no PDF)
-        System.out.println("=== SIMULATED RECEIPT ===");
-        System.out.println("Student ID: " + studentId);
-        System.out.println("Semester: " + semester);
-        System.out.println("Amount Paid: $" + new DecimalFormat("#.##").format(amount));
-        System.out.println("Date: " + payDate);
-        System.out.println("Receipt No: " + receiptNo);
-        System.out.println("========================");
+public void printModerationLog() {
+    try (PreparedStatement pstmt = prepare(
+            "SELECT m.moderation_id, c.course_name, sub.subject_name, sem.semester_number, m.transform, " +
+                    "m.status, m.rows_changed, m.applied_at FROM moderation_log m " +
+                    "JOIN subjects sub ON m.subject_id = sub.id JOIN courses c ON sub.course_id = c.id " +
+                    "JOIN semesters sem ON m.semester_id = sem.id ORDER BY m.moderation_id DESC LIMIT 20")) {
+        ResultSet rs = pstmt.executeQuery();
+        System.out.println("=== Moderation History ===");
+        System.out.println("ID\tSemester\tCourse - Subject\tTransform\tStatus\tRows\tApplied");
+        while (rs.next()) {
+            System.out.println(rs.getInt("moderation_id") + "\t" + rs.getInt("semester_number") + "\t\t" +
+                    rs.getString("course_name") + " - " + rs.getString("subject_name") + "\t" +
+                    rs.getString("transform") + "\t" + rs.getString("status") + "\t" +
+                    rs.getInt("rows_changed") + "\t" + rs.getTimestamp("applied_at"));
+        }
+        System.out.println("=== End Moderation History ===");
     } catch (SQLException e) {
-        e.printStackTrace();
+        sqlFailed(e);
     }
 }
 
-// Calculate outstanding for a student and semester
-public double computeOutstanding(String studentId, int semester) {
-    try {
-        // Get program
-        PreparedStatement progStmt = conn.prepareStatement("SELECT program FROM students WHERE student_id = ?");
-        progStmt.setString(1, studentId);
-        ResultSet progRs = progStmt.executeQuery();
-        if (!progRs.next()) return -1; // Student not found
-        String program = progRs.getString("program");
-
-        // Get total fee
-        PreparedStatement feeStmt = conn.prepareStatement(
-                "SELECT fee_amount FROM fee_structure WHERE program = ? AND semester = ?");
-        feeStmt.setString(1, program);
-        feeStmt.setInt(2, semester);
-        ResultSet feeRs = feeStmt.executeQuery();
-        if (!feeRs.next()) return -1; // No fee structure
-        double totalFee = feeRs.getDouble("fee_amount");
+// Synthetic dataset generator: fills the schema from initDatabase() with realistic volumes using batched inserts
+private static final int GENERATOR_BATCH_SIZE = 5000;
+private static final String[] FIRST_NAMES = {"Amina", "Brian", "Cynthia", "David", "Esther", "Felix", "Grace", "Hassan",
+        "Irene", "James", "Kevin", "Lucy", "Mercy", "Nathan", "Olivia", "Peter", "Rose", "Samuel", "Teresa", "Victor"};
+private static final String[] LAST_NAMES = {"Achieng", "Baraka", "Chebet", "Deng", "Erasto", "Fundi", "Gitau", "Hamisi",
+        "Juma", "Kamau", "Mwangi", "Njoroge", "Odhiambo", "Otieno", "Wanjiru", "Wekesa"};
+private static final String[] TIME_SLOTS = {"08:00-10:00", "10:00-12:00", "12:00-14:00", "14:00-16:00", "16:00-18:00"};
 
-        // Get total paid
-        PreparedStatement paidStmt = conn.prepareStatement(
-                "SELECT SUM(amount_paid) FROM student_payments WHERE student_id = ? AND semester_number = ?");
-        paidStmt.setString(1, studentId);
-        paidStmt.setInt(2, semester);
-        ResultSet paidRs = paidStmt.executeQuery();
-        paidRs.next();
-        double totalPaid = paidRs.getDouble(1);
+// Volumes are given as key=value pairs, e.g. --generate students=50000 programs=6 seed=7
+public static class DatasetConfig {
+    int students = 10000;
+    int programs = 5;
+    int courses = 8;
+    int subjectsPerCourse = 6;
+    int instructors = 60;
+    int semesters = 8;
+    int subjectsPerSemester = 6;
+    int classesPerSubject = 2;
+    double supRate = 0.6;      // share of failed results that go to a SUP
+    double supClearRate = 0.7; // share of SUPs that end up cleared
+    double paymentRate = 0.9;  // share of billed semesters with at least one payment
+    long seed = 42;
 
-        return totalFee - totalPaid;
-    } catch (SQLException e) {
-        e.printStackTrace();
+    static DatasetConfig parse(List<String> options) {
+        DatasetConfig cfg = new DatasetConfig();
+        for (String option : options) {
+            String[] kv = option.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "students": cfg.students = Integer.parseInt(kv[1]); break;
+                case "programs": cfg.programs = Integer.parseInt(kv[1]); break;
+                case "courses": cfg.courses = Integer.parseInt(kv[1]); break;
+                case "subjectsPerCourse": cfg.subjectsPerCourse = Integer.parseInt(kv[1]); break;
+                case "instructors": cfg.instructors = Integer.parseInt(kv[1]); break;
+                case "semesters": cfg.semesters = Integer.parseInt(kv[1]); break;
+                case "subjectsPerSemester": cfg.subjectsPerSemester = Integer.parseInt(kv[1]); break;
+                case "classesPerSubject": cfg.classesPerSubject = Integer.parseInt(kv[1]); break;
+                case "supRate": cfg.supRate = Double.parseDouble(kv[1]); break;
+                case "supClearRate": cfg.supClearRate = Double.parseDouble(kv[1]); break;
+                case "paymentRate": cfg.paymentRate = Double.parseDouble(kv[1]); break;
+                case "seed": cfg.seed = Long.parseLong(kv[1]); break;
+                default: System.out.println("Unknown generator option: " + kv[0]);
+            }
+        }
+        return cfg;
     }
-    return -1;
 }
 
-// Check for any outstanding fees across all semesters
-public boolean hasOutstandingFees(String studentId) {
-    try {
-        PreparedStatement semStmt = conn.prepareStatement("SELECT current_semester FROM students WHERE student_id = ?");
-        semStmt.setString(1, studentId);
-        ResultSet semRs = semStmt.executeQuery();
-        if (!semRs.next()) return true;
-        int currentSem = semRs.getInt("current_semester");
+// Batched insert that commits every GENERATOR_BATCH_SIZE rows
+private final class BatchWriter implements AutoCloseable {
+    private final PreparedStatement pstmt;
+    private int pending;
+    int written;
 
-        for (int sem = 1; sem <= currentSem; sem++) {
-            double out = computeOutstanding(studentId, sem);
-            if (out > 0) {
-                return true;
-            }
-        }
-        return false;
-    } catch (SQLException e) {
-        e.printStackTrace();
-        return true;
+    BatchWriter(String sql) throws SQLException {
+        pstmt = prepare(sql);
     }
-}
 
-// Generate Invoice (console simulation)
-public void generateInvoicePDF(String studentId, int semester) {
-    double outstanding = computeOutstanding(studentId, semester);
-    if (outstanding < 0) {
-        System.out.println("Cannot generate invoice: Invalid data.");
-        return;
+    void add(Object... params) throws SQLException {
+        bind(pstmt, params);
+        pstmt.addBatch();
+        written++;
+        if (++pending == GENERATOR_BATCH_SIZE) flush();
     }
-    System.out.println("=== SIMULATED INVOICE ===");
-    System.out.println("Student ID: " + studentId);
-    System.out.println("Semester: " + semester);
-    System.out.println("Outstanding Amount: $" + new DecimalFormat("#.##").format(outstanding));
-    System.out.println("========================");
-    System.out.println("Invoice generated (console). For PDF, add iText JAR.");
-}
 
-// Finance Reports
-public void generateFinanceReports() {
-    DecimalFormat df = new DecimalFormat("#.##");
-    LocalDate now = LocalDate.now();
+    void flush() throws SQLException {
+        if (pending == 0) return;
+        pstmt.executeBatch();
+        db().commit();
+        pending = 0;
+    }
 
-    // Total collections
-    try (PreparedStatement totalStmt = conn.prepareStatement("SELECT SUM(amount_paid) FROM student_payments")) {
-        ResultSet totalRs = totalStmt.executeQuery();
-        totalRs.next();
-        double totalCollections = totalRs.getDouble(1);
-        System.out.println("Total Collections: $" + df.format(totalCollections));
-    } catch (SQLException e) {
-        e.printStackTrace();
+    // Does not flush: on failure the pending tail is rolled back rather than committed
+    @Override
+    public void close() throws SQLException {
+        pstmt.close();
     }
+}
 
-    // Overdue accounts
-    System.out.println("\nOverdue Accounts:");
-    System.out.println("Student ID\tSemester\tOutstanding\tDue Date");
-    System.out.println("-----------------------------------------------------");
-    try (PreparedStatement overStmt = conn.prepareStatement(
-            "SELECT DISTINCT s.student_id, fs.semester, fs.due_date " +
-                    "FROM students s JOIN fee_structure fs ON s.program = fs.program " +
-                    "WHERE s.current_semester >= fs.semester")) {
-        ResultSet overRs = overStmt.executeQuery();
-        while (overRs.next()) {
-            String sid = overRs.getString("student_id");
-            int sem = overRs.getInt("semester");
-            java.sql.Date due = overRs.getDate("due_date");
-            if (due.toLocalDate().isBefore(now)) {
-                double out = computeOutstanding(sid, sem);
-                if (out > 0) {
-                    System.out.println(sid + "\t" + sem + "\t\t$" + df.format(out) + "\t\t" + due);
+private static double clampMarks(double marks) {
+    return Math.round(Math.max(0, Math.min(100, marks)) * 10) / 10.0;
+}
+
+public void generateDataset(DatasetConfig cfg) {
+    long start = System.currentTimeMillis();
+    Random random = new Random(cfg.seed);
+    String prefix = "G" + cfg.seed + "-";
+    try {
+        // Catalog: semesters, courses, subjects, instructors and their subject assignments
+        int[] semIds = new int[cfg.semesters + 1];
+        for (int sem = 1; sem <= cfg.semesters; sem++) semIds[sem] = catalog.upsertSemester(sem);
+        List<Integer> subjectIds = new ArrayList<>();
+        for (int c = 1; c <= cfg.courses; c++) {
+            int courseId = catalog.upsertCourse(String.format("Course %02d", c));
+            for (int s = 1; s <= cfg.subjectsPerCourse; s++) {
+                subjectIds.add(catalog.upsertSubject(String.format("Subject %02d-%02d", c, s), courseId));
+            }
+        }
+        int[] instructorIds = new int[cfg.instructors];
+        for (int i = 0; i < cfg.instructors; i++) {
+            instructorIds[i] = catalog.upsertInstructor(
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                    String.format("%sI%04d", prefix, i + 1));
+        }
+        Map<Integer, Integer> subjectInstructor = new HashMap<>();
+        for (int subjectId : subjectIds) {
+            int instructorId = instructorIds[random.nextInt(instructorIds.length)];
+            scheduling.assignInstructor(subjectId, instructorId);
+            subjectInstructor.put(subjectId, instructorId);
+        }
+
+        // Programs follow a skewed (1/rank) popularity; each has a fixed curriculum per semester
+        String[] programs = new String[cfg.programs];
+        double[] programWeights = new double[cfg.programs];
+        double weightSum = 0;
+        Map<String, List<Integer>> curriculum = new HashMap<>();
+        for (int p = 0; p < cfg.programs; p++) {
+            programs[p] = String.format("PROG-%02d", p + 1);
+            weightSum += 1.0 / (p + 1);
+            programWeights[p] = weightSum;
+            for (int sem = 1; sem <= cfg.semesters; sem++) {
+                List<Integer> pool = new ArrayList<>(subjectIds);
+                Collections.shuffle(pool, random);
+                curriculum.put(programs[p] + "|" + sem, new ArrayList<>(pool.subList(0, Math.min(cfg.subjectsPerSemester, pool.size()))));
+                fees.upsertFeeStructure(programs[p], 500 + 100 * p + 25 * sem, sem,
+                        java.sql.Date.valueOf(LocalDate.now().minusMonths(6L * (cfg.semesters - sem)).withDayOfMonth(1)));
+            }
+        }
+
+        // Classes: distinct room/day/slot cells for every subject taught in some semester
+        Map<String, List<Integer>> classesBySubjectSem = new HashMap<>();
+        int cell = 0;
+        for (Map.Entry<String, List<Integer>> entry : curriculum.entrySet()) {
+            int sem = Integer.parseInt(entry.getKey().substring(entry.getKey().indexOf('|') + 1));
+            for (int subjectId : entry.getValue()) {
+                String key = subjectId + "|" + sem;
+                if (classesBySubjectSem.containsKey(key)) continue;
+                List<Integer> classIds = new ArrayList<>();
+                for (int k = 0; k < cfg.classesPerSubject; k++, cell++) {
+                    String day = WEEK_DAYS[cell % 5];
+                    String slot = TIME_SLOTS[(cell / 5) % TIME_SLOTS.length];
+                    String room = prefix + "R" + (cell / (5 * TIME_SLOTS.length) + 1);
+                    classIds.add(scheduling.insertClass(day, slot, subjectId, subjectInstructor.get(subjectId), room, sem));
+                }
+                classesBySubjectSem.put(key, classIds);
+            }
+        }
+
+        // Students go in first so the child rows' foreign keys resolve
+        int[] studentProgram = new int[cfg.students + 1];
+        int[] studentSemester = new int[cfg.students + 1];
+        db().setAutoCommit(false);
+        int results = 0, sups = 0, paymentsMade = 0, allocations = 0;
+        try {
+            try (BatchWriter studentWriter = new BatchWriter(
+                    "INSERT INTO students (name, student_id, program, current_semester) VALUES (?, ?, ?, ?)")) {
+                for (int n = 1; n <= cfg.students; n++) {
+                    double pick = random.nextDouble() * weightSum;
+                    int p = 0;
+                    while (programWeights[p] < pick) p++;
+                    studentProgram[n] = p;
+                    studentSemester[n] = 1 + random.nextInt(cfg.semesters);
+                    studentWriter.add(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " +
+                            LAST_NAMES[random.nextInt(LAST_NAMES.length)], String.format("%s%07d", prefix, n),
+                            programs[p], studentSemester[n]);
                 }
+                studentWriter.flush();
             }
+            try (BatchWriter resultWriter = new BatchWriter(
+                         "INSERT INTO results (student_id, semester_id, subject_id, marks, grade) VALUES (?, ?, ?, ?, ?)");
+                 BatchWriter supWriter = new BatchWriter(
+                         "INSERT INTO sup_exams (student_id, semester_id, subject_id, status, marks) VALUES (?, ?, ?, ?, ?)");
+                 BatchWriter paymentWriter = new BatchWriter(
+                         "INSERT INTO student_payments (student_id, semester_number, amount_paid, payment_date, receipt_no) VALUES (?, ?, ?, ?, ?)");
+                 BatchWriter allocationWriter = new BatchWriter(
+                         "INSERT INTO student_classes (student_id, class_id) VALUES (?, ?)")) {
+                for (int n = 1; n <= cfg.students; n++) {
+                    String sid = String.format("%s%07d", prefix, n);
+                    int p = studentProgram[n];
+                    String program = programs[p];
+                    int currentSem = studentSemester[n];
+
+                    // Marks: student ability plus per-exam noise, drifting down slightly in later semesters
+                    double ability = random.nextGaussian();
+                    for (int sem = 1; sem <= currentSem; sem++) {
+                        for (int subjectId : curriculum.get(program + "|" + sem)) {
+                            double marks = clampMarks(72 + 10 * ability + 8 * random.nextGaussian() - 0.6 * sem);
+                            if (marks < 60 && random.nextDouble() < cfg.supRate) {
+                                boolean cleared = random.nextDouble() < cfg.supClearRate;
+                                double supMarks = cleared ? clampMarks(60 + 25 * random.nextDouble())
+                                        : clampMarks(marks + 10 * random.nextDouble());
+                                supWriter.add(sid, semIds[sem], subjectId, computeGrade(supMarks).equals("F") ? "Pending" : "Cleared", supMarks);
+                                marks = supMarks; // enterSUP overwrites the regular result
+                                sups++;
+                            }
+                            resultWriter.add(sid, semIds[sem], subjectId, marks, computeGrade(marks));
+                            results++;
+                        }
+                        if (random.nextDouble() < cfg.paymentRate) {
+                            double fee = 500 + 100 * p + 25 * sem;
+                            double paid = random.nextDouble() < 0.75 ? fee : Math.round(fee * (0.3 + 0.6 * random.nextDouble()));
+                            int installments = 1 + random.nextInt(2);
+                            LocalDate due = LocalDate.now().minusMonths(6L * (cfg.semesters - sem)).withDayOfMonth(1);
+                            for (int k = 0; k < installments; k++) {
+                                paymentWriter.add(sid, sem, paid / installments,
+                                        java.sql.Date.valueOf(due.minusDays(random.nextInt(60)).plusDays(30L * k)),
+                                        "RG" + cfg.seed + "-" + n + "-" + sem + "-" + k);
+                                paymentsMade++;
+                            }
+                        }
+                    }
+                    for (int subjectId : curriculum.get(program + "|" + currentSem)) {
+                        List<Integer> options = classesBySubjectSem.get(subjectId + "|" + currentSem);
+                        allocationWriter.add(sid, options.get(random.nextInt(options.size())));
+                        allocations++;
+                    }
+                }
+                resultWriter.flush();
+                supWriter.flush();
+                paymentWriter.flush();
+                allocationWriter.flush();
+            }
+        } catch (SQLException | RuntimeException e) {
+            db().rollback();
+            // Earlier batches are already committed, so the generated data is identifiable only by its prefix
+            System.out.println("Dataset generation failed: data for student ids " + prefix + "* (receipts RG" + cfg.seed +
+                    "-*, rooms " + prefix + "R*) is partial. Remove it or generate with a different seed.");
+            throw e;
+        } finally {
+            db().setAutoCommit(true);
         }
+        System.out.println("Generated " + cfg.students + " students, " + results + " results, " + sups + " SUPs, " +
+                paymentsMade + " payments, " + cell + " classes, " + allocations + " allocations in " +
+                (System.currentTimeMillis() - start) + " ms");
     } catch (SQLException e) {
-        e.printStackTrace();
+        sqlFailed(e);
     }
+    rebuildFinanceRollups();
+    refreshDerivedViews();
 }
 
-private String computeGrade(double marks) {
-    if (marks >= 90) return "A";
-    else if (marks >= 80) return "B";
-    else if (marks >= 70) return "C";
-    else if (marks >= 60) return "D";
-    else return "F";
+// In-memory views built at startup; rebuilt after bulk loads that bypass the incremental hooks
+private void refreshDerivedViews() {
+    buildCohortSketches();
+    buildTimetables();
+    buildStudentIndex();
 }
 
-private double gradeToPoints(String grade) {
-    switch (grade) {
-        case "A": return 4.0;
-        case "B": return 3.0;
-        case "C": return 2.0;
-        case "D": return 1.0;
-        default: return 0.0;
+// Macro load test: worker threads replay a weighted mix of menu operations through the workload scheduler
+public enum LoadOperation {
+    RESULTS_ENTRY(30, WorkloadClass.INTERACTIVE_WRITE),
+    GPA(25, WorkloadClass.INTERACTIVE_READ),
+    PAYMENT(20, WorkloadClass.INTERACTIVE_WRITE),
+    TRANSCRIPT(10, WorkloadClass.INTERACTIVE_READ),
+    INVOICE(10, WorkloadClass.INTERACTIVE_READ),
+    FINANCE_REPORT(5, WorkloadClass.REPORT);
+
+    final int weight;
+    final WorkloadClass workload;
+
+    LoadOperation(int weight, WorkloadClass workload) {
+        this.weight = weight;
+        this.workload = workload;
     }
 }
 
-public double computeGPA(String studentId, int semesterNum) {
-    if (semesterNum == -1) return computeOverallGPA(studentId);
-    double totalPoints = 0;
-    double totalCredits = 0;
-    int semId = insertOrGetSemester(semesterNum);
-    try (PreparedStatement pstmt = conn.prepareStatement(
-            "SELECT r.marks FROM results r WHERE r.student_id = ? AND r.semester_id = ?")) {
-        pstmt.setString(1, studentId);
-        pstmt.setInt(2, semId);
-        ResultSet rs = pstmt.executeQuery();
-        while (rs.next()) {
-            double marks = rs.getDouble("marks");
-            String grade = computeGrade(marks);
-            double points = gradeToPoints(grade);
-            totalPoints += points * 4;
-            totalCredits += 4;
+public static class LoadTestConfig {
+    int threads = 8;
+    int seconds = 30;
+    int warmupSeconds = 5;
+
+    static LoadTestConfig parse(List<String> options) {
+        LoadTestConfig cfg = new LoadTestConfig();
+        for (String option : options) {
+            String[] kv = option.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "threads": cfg.threads = Integer.parseInt(kv[1]); break;
+                case "seconds": cfg.seconds = Integer.parseInt(kv[1]); break;
+                case "warmup": cfg.warmupSeconds = Integer.parseInt(kv[1]); break;
+                default: System.out.println("Unknown load-test option: " + kv[0]);
+            }
         }
-        return totalCredits > 0 ? totalPoints / totalCredits : 0;
-    } catch (SQLException e) {
-        e.printStackTrace();
+        return cfg;
     }
-    return 0;
 }
 
-private double computeOverallGPA(String studentId) {
-    double totalPoints = 0;
-    double totalCredits = 0;
-    try (PreparedStatement pstmt = conn.prepareStatement(
-            "SELECT r.marks FROM results r WHERE r.student_id = ?")) {
-        pstmt.setString(1, studentId);
-        ResultSet rs = pstmt.executeQuery();
-        while (rs.next()) {
-            double marks = rs.getDouble("marks");
-            String grade = computeGrade(marks);
-            double points = gradeToPoints(grade);
-            totalPoints += points * 4;
-            totalCredits += 4;
-        }
-        return totalCredits > 0 ? totalPoints / totalCredits : 0;
-    } catch (SQLException e) {
-        e.printStackTrace();
+private static class LatencyRecorder {
+    private long[] nanos = new long[1024];
+    private int count;
+    int rejected;
+    int errors;
+
+    synchronized void record(long latencyNanos) {
+        if (count == nanos.length) nanos = Arrays.copyOf(nanos, count * 2);
+        nanos[count++] = latencyNanos;
+    }
+
+    synchronized void reject() { rejected++; }
+
+    synchronized void error() { errors++; }
+
+    synchronized long[] sorted() {
+        long[] copy = Arrays.copyOf(nanos, count);
+        Arrays.sort(copy);
+        return copy;
     }
-    return 0;
 }
 
-private String getSUPStatus(String studentId, int semNum, String subName, String courseName) {
-    try {
-        int semId = insertOrGetSemester(semNum);
-        int courseId = insertOrGetCourse(courseName);
-        int subId = insertOrGetSubject(subName, courseId);
-        PreparedStatement pstmt = conn.prepareStatement(
-                "SELECT status FROM sup_exams se WHERE se.student_id = ? AND se.semester_id = ? AND se.subject_id = ?");
-        pstmt.setString(1, studentId);
-        pstmt.setInt(2, semId);
-        pstmt.setInt(3, subId);
-        ResultSet rs = pstmt.executeQuery();
-        if (rs.next()) {
-            return rs.getString("status");
-        }
-    } catch (SQLException e) {
-        e.printStackTrace();
+private static double percentileMillis(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, idx))] / 1_000_000.0;
+}
+
+private void runLoadOperation(LoadOperation op, String studentId, String program, int semester,
+                              String[] subject, Random random) {
+    switch (op) {
+        case RESULTS_ENTRY:
+            recordResult("Load Test", studentId, program, semester, subject[0], subject[1],
+                    clampMarks(65 + 15 * random.nextGaussian()));
+            break;
+        case GPA:
+            computeGPA(studentId, random.nextBoolean() ? semester : -1);
+            break;
+        case PAYMENT:
+            recordPayment(studentId, semester, 50 + random.nextInt(200), "LT-" + System.nanoTime());
+            break;
+        case TRANSCRIPT:
+            generateTranscript(studentId, semester);
+            break;
+        case INVOICE:
+            generateInvoicePDF(studentId, semester);
+            break;
+        case FINANCE_REPORT:
+            generateFinanceReports();
+            break;
     }
-    return "";
 }
 
-// Generate transcripts with fee check and historical view
-public void generateTranscript(String studentId, int semesterNum) {
-    if (hasOutstandingFees(studentId)) {
-        System.out.println("Access denied: Outstanding fees pending.");
+public void runLoadTest(LoadTestConfig cfg) {
+    // The mix rewrites marks and records payments for existing students, so never run it against live data
+    if (backend != StorageBackend.EMBEDDED && System.getProperty("rms.db.url") == null) {
+        System.out.println("Load test refused: it modifies results and payments. " +
+                "Use --backend=embedded or point -Drms.db.url at a test database.");
         return;
     }
-    DecimalFormat df = new DecimalFormat("#.##");
-    System.out.println("=== Transcript for Student ID: " + studentId +
-            (semesterNum == -1 ? " (All Semesters)" : " (Semester " + semesterNum + ")") + " ===");
-    String query;
-    if (semesterNum == -1) {
-        query = "SELECT s.semester_number, c.course_name, sub.subject_name, r.marks, r.grade FROM results r " +
-                "JOIN semesters s ON r.semester_id = s.id " +
-                "JOIN subjects sub ON r.subject_id = sub.id " +
-                "JOIN courses c ON sub.course_id = c.id " +
-                "WHERE r.student_id = ? ORDER BY s.semester_number, c.course_name, sub.subject_name";
-    } else {
-        int semId = insertOrGetSemester(semesterNum);
-        query = "SELECT c.course_name, sub.subject_name, r.marks, r.grade FROM results r " +
-                "JOIN subjects sub ON r.subject_id = sub.id " +
-                "JOIN courses c ON sub.course_id = c.id " +
-                "WHERE r.student_id = ? AND r.semester_id = ? ORDER BY c.course_name, sub.subject_name";
-    }
-    try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-        pstmt.setString(1, studentId);
-        if (semesterNum != -1) pstmt.setInt(2, insertOrGetSemester(semesterNum));
-        ResultSet rs = pstmt.executeQuery();
-        Map<Integer, List<String>> semData = new HashMap<>();
-        int currentSem = 0;
+    List<String[]> studentPool = new ArrayList<>();
+    List<String[]> subjectPool = new ArrayList<>();
+    try (Statement stmt = createStatement()) {
+        ResultSet rs = stmt.executeQuery("SELECT student_id, program, current_semester FROM students");
         while (rs.next()) {
-            int sem = semesterNum == -1 ? rs.getInt("semester_number") : semesterNum;
-            String line = rs.getString("course_name") + " - " + rs.getString("subject_name") + "\t" +
-                    rs.getDouble("marks") + "\t" + rs.getString("grade");
-            semData.computeIfAbsent(sem, k -> new ArrayList<>()).add(line);
-            currentSem = sem;
+            studentPool.add(new String[]{rs.getString(1), rs.getString(2), String.valueOf(rs.getInt(3))});
         }
-        for (int sem : semData.keySet()) {
-            System.out.println("\nSemester " + sem + ":");
-            System.out.println("Course - Subject\tMarks\tGrade");
-            System.out.println("------------------------------------------");
-            for (String line : semData.get(sem)) {
-                System.out.println(line);
-                // SUP status (simplified, assume course/sub known)
-                // In full, query by sub
-            }
-            double gpa = computeGPA(studentId, sem);
-            System.out.println("GPA: " + df.format(gpa));
+        rs = stmt.executeQuery("SELECT c.course_name, sub.subject_name FROM subjects sub JOIN courses c ON sub.course_id = c.id");
+        while (rs.next()) {
+            subjectPool.add(new String[]{rs.getString(1), rs.getString(2)});
         }
-        if (semesterNum == -1) {
-            double overall = computeOverallGPA(studentId);
-            System.out.println("\nOverall GPA: " + df.format(overall));
+    } catch (SQLException e) {
+        sqlFailed(e);
+        return;
+    }
+    if (studentPool.isEmpty() || subjectPool.isEmpty()) {
+        System.out.println("Load test needs data; run with --generate first.");
+        return;
+    }
+
+    LoadOperation[] ops = LoadOperation.values();
+    int totalWeight = 0;
+    for (LoadOperation op : ops) totalWeight += op.weight;
+    Map<LoadOperation, LatencyRecorder> recorders = new EnumMap<>(LoadOperation.class);
+    for (LoadOperation op : ops) recorders.put(op, new LatencyRecorder());
+
+    long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(cfg.warmupSeconds);
+    long end = warmupEnd + TimeUnit.SECONDS.toNanos(cfg.seconds);
+    int weightTotal = totalWeight;
+    java.io.PrintStream console = System.out;
+    System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream())); // operations print receipts and reports
+    List<Thread> drivers = new ArrayList<>();
+    for (int t = 0; t < cfg.threads; t++) {
+        long threadSeed = t;
+        Thread driver = new Thread(() -> {
+            Random random = new Random(threadSeed);
+            while (System.nanoTime() < end) {
+                int pick = random.nextInt(weightTotal);
+                LoadOperation op = ops[0];
+                for (LoadOperation candidate : ops) {
+                    if (pick < candidate.weight) {
+                        op = candidate;
+                        break;
+                    }
+                    pick -= candidate.weight;
+                }
+                String[] student = studentPool.get(random.nextInt(studentPool.size()));
+                String[] subject = subjectPool.get(random.nextInt(subjectPool.size()));
+                LoadOperation chosen = op;
+                boolean measured = System.nanoTime() >= warmupEnd;
+                long begin = System.nanoTime();
+                try {
+                    scheduler.submit(op.workload, () -> {
+                        runLoadOperation(chosen, student[0], student[1], Integer.parseInt(student[2]), subject, random);
+                        return null;
+                    }).get();
+                    if (measured) recorders.get(op).record(System.nanoTime() - begin);
+                } catch (RejectedExecutionException e) {
+                    if (measured) recorders.get(op).reject();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ExecutionException e) {
+                    if (measured) recorders.get(op).error();
+                }
+            }
+        }, "load-driver-" + t);
+        drivers.add(driver);
+        driver.start();
+    }
+    for (Thread driver : drivers) {
+        try {
+            driver.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        System.out.println("=== End Transcript ===");
+    }
+    System.setOut(console);
+
+    DecimalFormat df = new DecimalFormat("#.##");
+    System.out.println("=== Load Test: " + cfg.threads + " threads, " + cfg.seconds + "s measured (" +
+            cfg.warmupSeconds + "s warm-up), " + studentPool.size() + " students ===");
+    System.out.println("Operation\tCount\tRejected\tErrors\tOps/s\tp50 ms\tp95 ms\tp99 ms\tMax ms");
+    System.out.println("----------------------------------------------------------------------------------");
+    for (LoadOperation op : ops) {
+        LatencyRecorder rec = recorders.get(op);
+        long[] sorted = rec.sorted();
+        System.out.println(op + "\t" + sorted.length + "\t" + rec.rejected + "\t" + rec.errors + "\t" +
+                df.format(sorted.length / (double) cfg.seconds) + "\t" +
+                df.format(percentileMillis(sorted, 50)) + "\t" + df.format(percentileMillis(sorted, 95)) + "\t" +
+                df.format(percentileMillis(sorted, 99)) + "\t" + df.format(percentileMillis(sorted, 100)));
+    }
+    System.out.println("=== End Load Test ===");
+}
+
+// Options following a command-line flag, up to the next flag
+// Embedded self-check: exercises upserts, payment rollups and moderation/undo against a throwaway in-memory
+// database, e.g. java ResultsManagementSystem --self-check; exits non-zero when any check fails
+private static final String SELF_CHECK_URL =
+        "jdbc:h2:mem:rms_self_check;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1";
+
+private int selfCheckFailures;
+
+private void expect(String check, boolean ok) {
+    System.out.println((ok ? "PASS  " : "FAIL  ") + check);
+    if (!ok) selfCheckFailures++;
+}
+
+private ExpectedFee expectedFee(String program, int semester) throws SQLException {
+    for (ExpectedFee fee : fees.expectedFees()) {
+        if (fee.program.equals(program) && fee.semester == semester) return fee;
+    }
+    return null;
+}
+
+// Returns the number of failed checks
+public int runSelfCheck() {
+    selfCheckFailures = 0;
+    try {
+        int student = insertOrGetStudent("Check One", "SC-1", "SCHK");
+        expect("student upsert returns the existing row",
+                student != -1 && insertOrGetStudent("Check One", "SC-1", "SCHK") == student &&
+                        queryInt("SELECT COUNT(*) FROM students WHERE student_id = ?", "SC-1") == 1);
+        int course = insertOrGetCourse("Check Course");
+        int subject = insertOrGetSubject("Check Subject", course);
+        expect("catalog upserts return the existing row",
+                course != -1 && insertOrGetCourse("Check Course") == course &&
+                        subject != -1 && insertOrGetSubject("Check Subject", course) == subject &&
+                        insertOrGetSemester(1) == insertOrGetSemester(1));
+        int instructor = insertOrGetInstructor("Dr Check", "SC-I1");
+        assignInstructorToSubject(subject, instructor);
+        assignInstructorToSubject(subject, instructor);
+        expect("instructor assignment is idempotent", instructor != -1 && instructor == insertOrGetInstructor("Dr Check", "SC-I1") &&
+                queryInt("SELECT COUNT(*) FROM subject_instructors WHERE subject_id = ?", subject) == 1);
+        setFeeStructure("SCHK", 1000, 1, "2030-01-31");
+        setFeeStructure("SCHK", 1200, 1, "2030-01-31");
+        expect("fee structure upsert replaces the amount",
+                queryInt("SELECT COUNT(*) FROM fee_structure WHERE program = ?", "SCHK") == 1 &&
+                        queryInt("SELECT fee_amount FROM fee_structure WHERE program = ? AND semester = 1", "SCHK") == 1200);
+
+        insertOrGetStudent("Check Two", "SC-2", "SCHK");
+        ExpectedFee expected = expectedFee("SCHK", 1);
+        expect("expected fees count new enrollments", expected != null && expected.enrolledStudents == 2);
+        insertOrGetStudent("Check Three", "SC-3", "");
+        setFeeStructure("SCHK2", 900, 1, "2030-01-31");
+        setFeeStructure("SCHK2", 900, 2, "2030-06-30");
+        insertOrGetStudent("Check Three", "SC-3", "SCHK2");
+        expected = expectedFee("SCHK2", 1);
+        expect("assigning a program counts the existing student", expected != null && expected.enrolledStudents == 1);
+        registerNewSemester("SC-3");
+        expected = expectedFee("SCHK2", 2);
+        expect("registering a semester counts the enrollment", expected != null && expected.enrolledStudents == 1);
+        double before = collectionsBetween(null, null);
+        recordPayment("SC-1", 1, 300, "SC-R1");
+        recordPayment("SC-2", 1, 200, "SC-R2");
+        double collected = collectionsBetween(null, null);
+        expect("payment rollup tracks recorded payments", collected - before == 500);
+        rebuildFinanceRollups();
+        expected = expectedFee("SCHK", 1);
+        ExpectedFee secondSemester = expectedFee("SCHK2", 2);
+        expect("rebuilt rollups match the incremental ones", collectionsBetween(null, null) == collected &&
+                expected != null && expected.enrolledStudents == 2 &&
+                secondSemester != null && secondSemester.enrolledStudents == 1);
+
+        recordResult("Check One", "SC-1", "SCHK", 1, "Check Course", "Check Subject", 50);
+        recordResult("Check Two", "SC-2", "SCHK", 1, "Check Course", "Check Subject", 85);
+        String marksTotal = "SELECT ROUND(SUM(marks) * 10) FROM results WHERE subject_id = ?";
+        int original = queryInt(marksTotal, subject);
+        int moderation = moderateSubject(1, "Check Course", "Check Subject", MarkTransform.linear(1.1, 0));
+        expect("moderation rescales marks and regrades", moderation != -1 && queryInt(marksTotal, subject) == 1485 &&
+                queryInt("SELECT COUNT(*) FROM results WHERE subject_id = ? AND grade <> " + gradeSql("marks"), subject) == 0);
+        int logged = queryInt("SELECT COUNT(*) FROM moderation_log");
+        expect("moderation of an unknown subject is refused",
+                moderateSubject(1, "Check Course", "Check Subjet", MarkTransform.linear(1.1, 0)) == -1 &&
+                        queryInt("SELECT COUNT(*) FROM moderation_log") == logged);
+        expect("undo restores the original marks", undoModeration(moderation) && queryInt(marksTotal, subject) == original &&
+                queryInt("SELECT COUNT(*) FROM results WHERE subject_id = ? AND grade <> " + gradeSql("marks"), subject) == 0);
     } catch (SQLException e) {
         e.printStackTrace();
+        expect("self-check queries", false);
     }
+    System.out.println(selfCheckFailures == 0 ? "Self-check passed." : selfCheckFailures + " self-check(s) failed.");
+    return selfCheckFailures;
 }
 
-public void comparePerformance(String studentId, List<Integer> semesters) {
-    System.out.println("=== Performance Comparison for Student ID: " + studentId + " ===");
-    System.out.println("Semester\tGPA");
-    System.out.println("----------------");
-    DecimalFormat df = new DecimalFormat("#.##");
-    for (int sem : semesters) {
-        double gpa = computeGPA(studentId, sem);
-        System.out.println(sem + "\t\t" + df.format(gpa));
-    }
-    System.out.println("=== End Comparison ===");
+private static List<String> optionsAfter(String[] args, String flag) {
+    int idx = Arrays.asList(args).indexOf(flag);
+    if (idx < 0) return null;
+    List<String> options = new ArrayList<>();
+    for (int i = idx + 1; i < args.length && !args[i].startsWith("--"); i++) options.add(args[i]);
+    return options;
 }
 
 public static void main(String[] args) {
-    ResultsManagementSystem rms = new ResultsManagementSystem();
+    if (Arrays.asList(args).contains("--self-check")) {
+        System.setProperty("rms.db.url", SELF_CHECK_URL); // never the configured database
+        System.exit(new ResultsManagementSystem(StorageBackend.EMBEDDED).runSelfCheck() == 0 ? 0 : 1);
+    }
+    ResultsManagementSystem rms = new ResultsManagementSystem(StorageBackend.fromArgs(args));
+    List<String> generateOptions = optionsAfter(args, "--generate");
+    List<String> loadTestOptions = optionsAfter(args, "--load-test");
+    if (generateOptions != null) rms.generateDataset(DatasetConfig.parse(generateOptions));
+    if (loadTestOptions != null) rms.runLoadTest(LoadTestConfig.parse(loadTestOptions));
+    if (generateOptions != null || loadTestOptions != null) System.exit(0);
+    rms.scheduleAtRiskDetection();
     Scanner scanner = new Scanner(System.in);
 
     while (true) {
-        System.out.println("\n1. Enter Results\n2. Generate Transcript\n3. Compute GPA\n4. Compare Performance\n5. Register New Semester\n6. Enter SUP\n7. Set Fee Structure\n8. Record Payment\n9. Generate Invoice\n10. Finance Reports\n11. Assign Instructor to Subject\n12. Create Class Schedule\n13. Allocate Student to Class\n14. Exit");
+        System.out.println("\n1. Enter Results\n2. Generate Transcript\n3. Compute GPA\n4. Compare Performance\n5. Register New Semester\n6. Enter SUP\n7. Set Fee Structure\n8. Record Payment\n9. Generate Invoice\n10. Finance Reports\n11. Assign Instructor to Subject\n12. Create Class Schedule\n13. Allocate Student to Class\n14. Exit\n15. Subject Analytics\n16. At-Risk Students\n17. Student Timetable\n18. Timetable Clash Report\n19. Finance Dashboard\n20. Search Students\n21. Archival\n22. Grade Moderation");
         int choice = scanner.nextInt();
         scanner.nextLine(); // Consume newline
 
@@ -812,7 +4018,11 @@ public static void main(String[] args) {
                 System.out.print("Enter semester (0 for all): ");
                 int semInput = scanner.nextInt();
                 scanner.nextLine();
-                rms.generateTranscript(sid, semInput == 0 ? -1 : semInput);
+                String transcriptSid = sid;
+                int transcriptSem = semInput == 0 ? -1 : semInput;
+                // Full-history transcripts are heavy and run with the reports
+                rms.runWorkload(transcriptSem == -1 ? WorkloadClass.REPORT : WorkloadClass.INTERACTIVE_READ,
+                        () -> rms.generateTranscript(transcriptSid, transcriptSem));
                 break;
             case 3:
                 System.out.print("Enter student ID: ");
@@ -820,8 +4030,10 @@ public static void main(String[] args) {
                 System.out.print("Enter semester (0 for overall): ");
                 semInput = scanner.nextInt();
                 scanner.nextLine();
-                double gpa = rms.computeGPA(sid, semInput == 0 ? -1 : semInput);
-                System.out.println("GPA: " + gpa);
+                String gpaSid = sid;
+                int gpaSem = semInput == 0 ? -1 : semInput;
+                Double gpa = rms.runWorkload(WorkloadClass.INTERACTIVE_READ, () -> rms.computeGPA(gpaSid, gpaSem));
+                if (gpa != null) System.out.println("GPA: " + gpa);
                 break;
             case 4:
                 System.out.print("Enter student ID: ");
@@ -832,12 +4044,13 @@ public static void main(String[] args) {
                 for (String s : semStr) {
                     sems.add(Integer.parseInt(s.trim()));
                 }
-                rms.comparePerformance(sid, sems);
+                String compareSid = sid;
+                rms.runWorkload(WorkloadClass.INTERACTIVE_READ, () -> rms.comparePerformance(compareSid, sems));
                 break;
             case 5:
                 System.out.print("Enter student ID: ");
                 String regSid = scanner.nextLine();
-                rms.registerNewSemester(regSid);
+                rms.runWorkload(WorkloadClass.INTERACTIVE_WRITE, () -> rms.registerNewSemester(regSid));
                 break;
             case 6:
                 rms.enterSUP();
@@ -852,7 +4065,7 @@ public static void main(String[] args) {
                 scanner.nextLine();
                 System.out.print("Enter due date (YYYY-MM-DD): ");
                 String dueStr = scanner.nextLine();
-                rms.setFeeStructure(prog, amt, fsSem, dueStr);
+                rms.runWorkload(WorkloadClass.INTERACTIVE_WRITE, () -> rms.setFeeStructure(prog, amt, fsSem, dueStr));
                 break;
             case 8:
                 System.out.print("Enter student ID: ");
@@ -864,7 +4077,7 @@ public static void main(String[] args) {
                 scanner.nextLine();
                 System.out.print("Enter receipt no: ");
                 String recNo = scanner.nextLine();
-                rms.recordPayment(paySid, paySem, payAmt, recNo);
+                rms.runWorkload(WorkloadClass.INTERACTIVE_WRITE, () -> rms.recordPayment(paySid, paySem, payAmt, recNo));
                 break;
             case 9:
                 System.out.print("Enter student ID: ");
@@ -872,10 +4085,10 @@ public static void main(String[] args) {
                 System.out.print("Enter semester: ");
                 int invSem = scanner.nextInt();
                 scanner.nextLine();
-                rms.generateInvoicePDF(invSid, invSem);
+                rms.runWorkload(WorkloadClass.INTERACTIVE_READ, () -> rms.generateInvoicePDF(invSid, invSem));
                 break;
             case 10:
-                rms.generateFinanceReports();
+                rms.runWorkload(WorkloadClass.REPORT, rms::generateFinanceReports);
                 break;
             case 11:
                 // Assign Instructor to Subject
@@ -908,10 +4121,7 @@ public static void main(String[] args) {
                 instId = scanner.nextLine();
                 int instructorDbId12 = -1; // Renamed to avoid conflict
                 try {
-                    PreparedStatement instSelect = rms.conn.prepareStatement("SELECT id FROM instructors WHERE instructor_id = ?");
-                    instSelect.setString(1, instId);
-                    ResultSet instRs = instSelect.executeQuery();
-                    if (instRs.next()) instructorDbId12 = instRs.getInt("id");
+                    instructorDbId12 = rms.catalog.findInstructor(instId);
                 } catch (SQLException e) {
                     e.printStackTrace();
                 }
@@ -933,11 +4143,98 @@ public static void main(String[] args) {
                 System.out.print("Enter class ID: ");
                 int classId = scanner.nextInt();
                 scanner.nextLine();
-                rms.allocateStudentToClass(allocSid, classId);
+                rms.runWorkload(WorkloadClass.INTERACTIVE_WRITE, () -> rms.allocateStudentToClass(allocSid, classId));
                 break;
             case 14:
                 System.exit(0);
                 break;
+            case 15:
+                rms.runWorkload(WorkloadClass.REPORT, rms::generateSubjectAnalyticsReport);
+                break;
+            case 16:
+                rms.runWorkload(WorkloadClass.REPORT, rms::generateAtRiskReport);
+                break;
+            case 17:
+                System.out.print("Enter student ID: ");
+                String ttSid = scanner.nextLine();
+                System.out.print("Enter semester (0 for all): ");
+                int ttSem = scanner.nextInt();
+                scanner.nextLine();
+                rms.printStudentTimetable(ttSid, ttSem == 0 ? -1 : ttSem);
+                System.out.print("Export to CSV file (blank to skip): ");
+                String ttPath = scanner.nextLine().trim();
+                if (!ttPath.isEmpty()) rms.exportStudentTimetable(ttSid, ttSem == 0 ? -1 : ttSem, ttPath);
+                break;
+            case 18:
+                rms.generateClashReport();
+                break;
+            case 19:
+                System.out.print("From date (YYYY-MM-DD, blank for all): ");
+                String fromStr = scanner.nextLine().trim();
+                System.out.print("To date (YYYY-MM-DD, blank for today): ");
+                String toStr = scanner.nextLine().trim();
+                LocalDate fromDate = fromStr.isEmpty() ? null : LocalDate.parse(fromStr);
+                LocalDate toDate = toStr.isEmpty() ? null : LocalDate.parse(toStr);
+                rms.runWorkload(WorkloadClass.INTERACTIVE_READ, () -> rms.generateFinanceDashboard(fromDate, toDate));
+                break;
+            case 20:
+                System.out.print("Name or partial Student ID: ");
+                String searchQuery = scanner.nextLine();
+                System.out.print("Program (blank for all): ");
+                String searchProgram = scanner.nextLine().trim();
+                rms.printStudentSearch(searchQuery, searchProgram);
+                break;
+            case 21:
+                System.out.print("1. Mark student graduated/inactive  2. Graduate cohort  3. Run archival  4. Status: ");
+                int archiveChoice = scanner.nextInt();
+                scanner.nextLine();
+                if (archiveChoice == 1) {
+                    System.out.print("Enter student ID: ");
+                    String statusSid = scanner.nextLine();
+                    System.out.print("Status (GRADUATED/INACTIVE/ACTIVE): ");
+                    rms.setStudentStatus(statusSid, scanner.nextLine().trim().toUpperCase());
+                } else if (archiveChoice == 2) {
+                    System.out.print("Enter program: ");
+                    String gradProgram = scanner.nextLine();
+                    System.out.print("Final semester: ");
+                    int finalSem = scanner.nextInt();
+                    scanner.nextLine();
+                    rms.graduateCohort(gradProgram, finalSem);
+                } else if (archiveChoice == 3) {
+                    rms.runWorkload(WorkloadClass.REPORT, () -> rms.archiveInactiveStudents(ARCHIVE_BATCH_SIZE));
+                } else {
+                    rms.printArchiveStatus();
+                }
+                break;
+            case 22:
+                System.out.print("1. Moderate subject  2. Undo moderation  3. History: ");
+                int moderationChoice = scanner.nextInt();
+                scanner.nextLine();
+                if (moderationChoice == 1) {
+                    System.out.print("Enter semester number: ");
+                    int modSem = scanner.nextInt();
+                    scanner.nextLine();
+                    System.out.print("Enter course name: ");
+                    String modCourse = scanner.nextLine();
+                    System.out.print("Enter subject name: ");
+                    String modSubject = scanner.nextLine();
+                    System.out.print("Transform ('linear <scale> <shift>' or 'piecewise 0:0 50:60 100:100'): ");
+                    try {
+                        MarkTransform transform = MarkTransform.parse(scanner.nextLine());
+                        rms.runWorkload(WorkloadClass.REPORT,
+                                () -> rms.moderateSubject(modSem, modCourse, modSubject, transform));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Invalid transform: " + e.getMessage());
+                    }
+                } else if (moderationChoice == 2) {
+                    System.out.print("Moderation ID: ");
+                    int undoId = scanner.nextInt();
+                    scanner.nextLine();
+                    rms.runWorkload(WorkloadClass.REPORT, () -> rms.undoModeration(undoId));
+                } else {
+                    rms.printModerationLog();
+                }
+                break;
         }
     }
 }